@@ -6,8 +6,12 @@ import libsvm.svm_model;
 import classifier.SVMHelper;
 import hog.HOG;
 
+import utils.ByteImage;
+import utils.Detections;
 import utils.DataHelper;
+import utils.FloatImage;
 import utils.ImageHelper;
+import utils.RectangleHelper;
 
 public class Main {
     public static int [] size = {160, 96};
@@ -60,6 +64,10 @@ public class Main {
         // predict(model, "shipsnet_data/scenes/sfbay_2.png");
         // predict(model, "shipsnet_data/scenes/sfbay_3.png");
         // predict(model, "shipsnet_data/scenes/sfbay_4.png");
+
+        // benchmarkPyramid(model, "shipsnet_data/scenes/lb_1.png");
+
+        // predictTiled(model, "shipsnet_data/scenes/sfbay_1.png");
     }
 
     public static void preprocess(String positive_path, String negative_path, String savePath){
@@ -108,25 +116,80 @@ public class Main {
         HOG hog = new HOG(test_image, nbins, pixels_per_cell, cells_per_block, model);
 
         long startTime = System.currentTimeMillis();
-        List<Rectangle> rectangles = hog.detectMultiScale(new short[]{80, 80}, new short[]{40, 40}, 500f, 0.5f, 0);
+        Detections detections = hog.detect(new short[]{80, 80}, new short[]{40, 40}, 500f, 0.5f, 0, size);
         long endTime = System.currentTimeMillis();
         
         System.out.println("Time: " + (endTime - startTime) + " ms");
 
-        BufferedImage image = ImageHelper.drawRectangles(test_image, rectangles, ImageHelper.RED);
+        BufferedImage image = ImageHelper.drawRectangles(test_image, detections, ImageHelper.RED);
         String fileName = savePath.substring(savePath.lastIndexOf('/') + 1);
         ImageHelper.save(image, "results" + "/" + "test_" + fileName);
     }
 
+    public static void predictTiled(svm_model model, String path){
+        HOG hog = new HOG(nbins, pixels_per_cell, cells_per_block, model);
+
+        long startTime = System.currentTimeMillis();
+        Detections detections = hog.detectTiled(path, 1024, new short[]{80, 80}, new short[]{40, 40}, 1.2f, 0.0f, 0.5f, 0, size);
+        long endTime = System.currentTimeMillis();
+
+        System.out.println("Time: " + (endTime - startTime) + " ms");
+
+        // The scene may not fit in memory at full resolution, so detections are drawn on a subsampled copy
+        int previewSize = 4096;
+        int[] sceneSize = ImageHelper.getImageSize(path);
+        int subsampling = Math.max(1, (Math.max(sceneSize[0], sceneSize[1]) + previewSize - 1) / previewSize);
+        FloatImage preview = ImageHelper.loadImage(path, new Rectangle(0, 0, sceneSize[1], sceneSize[0]), subsampling, "grayscale");
+
+        Detections scaled = new Detections(detections.size());
+        for (int i = 0; i < detections.size(); i++) {
+            scaled.add(detections.x[i] / subsampling, detections.y[i] / subsampling, detections.width[i] / subsampling, detections.height[i] / subsampling, detections.score[i], detections.level[i]);
+        }
+
+        BufferedImage image = ImageHelper.drawRectangles(preview.toGrayArray(), scaled, ImageHelper.RED);
+        String fileName = path.substring(path.lastIndexOf('/') + 1);
+        ImageHelper.save(image, "results" + "/" + "test_" + fileName);
+    }
+
+    public static void benchmarkPyramid(svm_model model, String path){
+        float[][] test_image = (float[][]) ImageHelper.load(path, null, "grayscale");
+        HOG hog = new HOG(test_image, nbins, pixels_per_cell, cells_per_block, model);
+        float lambda = hog.fitPyramidLambda(new float[]{0.75f, 0.5f, 0.25f});
+
+        long startTime = System.currentTimeMillis();
+        List<Rectangle> exact = hog.detectMultiScale(new short[]{80, 80}, new short[]{40, 40}, 1.05f, 0.5f, 0, size);
+        long exactTime = System.currentTimeMillis() - startTime;
+
+        hog.setFastPyramid(true, lambda);
+        startTime = System.currentTimeMillis();
+        List<Rectangle> fast = hog.detectMultiScale(new short[]{80, 80}, new short[]{40, 40}, 1.05f, 0.5f, 0, size);
+        long fastTime = System.currentTimeMillis() - startTime;
+
+        int matched = 0;
+        for (Rectangle rect : exact) {
+            for (Rectangle other : fast) {
+                if (RectangleHelper.IoU(rect, other) >= 0.5f) {
+                    matched++;
+                    break;
+                }
+            }
+        }
+
+        System.out.println("Lambda: " + lambda);
+        System.out.println("Exact pyramid: " + exactTime + " ms, " + exact.size() + " detections");
+        System.out.println("Fast pyramid: " + fastTime + " ms, " + fast.size() + " detections");
+        System.out.println("Speedup: " + (float) exactTime / Math.max(1, fastTime) + "x, exact detections recovered: " + matched + "/" + exact.size());
+    }
+
     public static void predictImages(svm_model model, String path, float threshold){
         Object[] data = DataHelper.getImages(path, size);
         String[] image_names = (String[]) data[0];
-        float[][][] images = (float[][][]) data[1];
+        ByteImage[] images = (ByteImage[]) data[1];
 
         for (int i = 0; i < images.length; i++) {
             HOG hog = new HOG(images[i], nbins, pixels_per_cell, cells_per_block, model);
-            List<Rectangle> rectangles = hog.detectMultiScale(new short[]{80, 64}, new short[]{4, 4}, 1.05f, threshold, 0);
-            BufferedImage image = ImageHelper.drawRectangles(images[i], rectangles, ImageHelper.RED);
+            List<Rectangle> rectangles = hog.detectMultiScale(new short[]{80, 64}, new short[]{4, 4}, 1.05f, threshold, 0, size);
+            BufferedImage image = ImageHelper.drawRectangles(images[i].toFloatImage().toGrayArray(), rectangles, ImageHelper.RED);
             ImageHelper.save(image, "results" + "/" + path.substring(5) + "detected_" + image_names[i]);
         }
     }
@@ -0,0 +1,122 @@
+package classifier;
+
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+
+/* Two-class linear C-SVC folded into a single weight vector: decision(x) = w . x - rho */
+public class LinearSVM {
+    private static final double MIN_PROB = 1e-7;
+
+    private float[] w;
+    private double rho;
+    private double probA;
+    private double probB;
+    private boolean probability;
+
+    public LinearSVM(svm_model model) {
+        if (!isLinear(model)) {
+            throw new IllegalArgumentException("Only two-class linear C-SVC models can be compiled!");
+        }
+
+        int dimension = SVMHelper.getDimension(model);
+
+        double[] weights = new double[dimension];
+        double[] coef = model.sv_coef[0];
+        for (int i = 0; i < model.l; i++) {
+            for (svm_node node : model.SV[i]) {
+                weights[node.index - 1] += coef[i] * node.value;
+            }
+        }
+
+        this.w = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            this.w[i] = (float) weights[i];
+        }
+
+        this.rho = model.rho[0];
+        this.probability = model.probA != null && model.probB != null;
+        if (this.probability) {
+            this.probA = model.probA[0];
+            this.probB = model.probB[0];
+        }
+    }
+
+    public static boolean isLinear(svm_model model) {
+        return model != null
+            && model.nr_class == 2
+            && (model.param.svm_type == svm_parameter.C_SVC || model.param.svm_type == svm_parameter.NU_SVC)
+            && model.param.kernel_type == svm_parameter.LINEAR;
+    }
+
+    public float[] getWeights() {
+        return this.w;
+    }
+
+    public double getRho() {
+        return this.rho;
+    }
+
+    public boolean hasProbability() {
+        return this.probability;
+    }
+
+    public double decision(float[] features) {
+        if (features.length != this.w.length) {
+            throw new IllegalArgumentException("Feature length " + features.length + " does not match the model's " + this.w.length + "!");
+        }
+        double sum = 0;
+        for (int i = 0; i < this.w.length; i++) {
+            sum += this.w[i] * features[i];
+        }
+        return sum - this.rho;
+    }
+
+    /*
+     * Decision value above which probability(d)[0] exceeds the given probability, or NaN when there is none (the
+     * model has no probability information, or its sigmoid does not increase with the decision value).
+     */
+    public double decisionThreshold(double probability) {
+        if (!this.probability || this.probA >= 0 || probability < MIN_PROB || probability >= 1 - MIN_PROB) return Double.NaN;
+        return (Math.log(1.0 / probability - 1.0) - this.probB) / this.probA;
+    }
+
+    /*
+     * Upper bounds on what the weights from chunk k onwards can still add to w . x, for w split into consecutive chunks
+     * of chunk_length and every chunk of x non-negative with an L2 norm of at most 1 (e.g. normalized HOG blocks).
+     * bounds[k] is the sum of the L2 norms of the positive parts of chunks k, k + 1, ...; bounds[n_chunks] is 0.
+     */
+    public double[] computeRemainingBounds(int chunk_length) {
+        int n_chunks = (this.w.length + chunk_length - 1) / chunk_length;
+        double[] bounds = new double[n_chunks + 1];
+
+        for (int k = n_chunks - 1; k >= 0; k--) {
+            double squared_sum = 0;
+            for (int i = k * chunk_length; i < Math.min(this.w.length, (k + 1) * chunk_length); i++) {
+                if (this.w[i] > 0) squared_sum += (double) this.w[i] * this.w[i];
+            }
+            bounds[k] = bounds[k + 1] + Math.sqrt(squared_sum);
+        }
+
+        return bounds;
+    }
+
+    /* Same estimates as svm.svm_predict_probability for a two-class model: {P(label[0]), P(label[1])} */
+    public double[] predict_probability(float[] features) {
+        return this.probability(this.decision(features));
+    }
+
+    public double[] probability(double decision_value) {
+        if (!this.probability) {
+            throw new IllegalStateException("Model doesn't contain probability information!");
+        }
+
+        double fApB = decision_value * this.probA + this.probB;
+        double p;
+        if (fApB >= 0) p = Math.exp(-fApB) / (1.0 + Math.exp(-fApB));
+        else p = 1.0 / (1 + Math.exp(fApB));
+
+        p = Math.min(Math.max(p, MIN_PROB), 1 - MIN_PROB);
+        return new double[]{p, 1 - p};
+    }
+}
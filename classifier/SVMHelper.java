@@ -75,6 +75,17 @@ public class SVMHelper {
         }
     }
 
+    /* Length of the feature vectors the model was trained on, i.e. the highest feature index of its support vectors */
+    public static int getDimension(svm_model model) {
+        int dimension = 0;
+        for (svm_node[] sv : model.SV) {
+            for (svm_node node : sv) {
+                dimension = Math.max(dimension, node.index);
+            }
+        }
+        return dimension;
+    }
+
     public static double predict(svm_model model, float[] features)  {
         svm_node[] nodes = new svm_node[features.length];
         for (int i = 0; i < features.length; i++) {
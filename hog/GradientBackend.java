@@ -0,0 +1,59 @@
+package hog;
+
+import utils.FloatImage;
+
+/*
+ * Per-row stage of the fused float kernel: Sobel gradient, magnitude and orientation bin of every pixel of a row.
+ * The scalar backend is always available; the vectorized one (vector/hog/VectorGradientBackend.java, built
+ * separately) is picked automatically when it is on the class path and the jdk.incubator.vector module is present
+ * (run with --add-modules jdk.incubator.vector), unless -Dhog.vector=false is set.
+ */
+public interface GradientBackend {
+    /*
+     * For x in [0, length) of row y, stores the gradient magnitude, the lower bin index bin_0 and the interpolation
+     * weight t of bin_0 (bin_0 + 1 gets 1 - t), with the same formulas as HOG.vote.
+     */
+    void computeRow(FloatImage image, int y, int length, int nbins, Row row);
+
+    static GradientBackend get() {
+        return Holder.BACKEND;
+    }
+
+    /* Reusable row buffers, grown on demand */
+    final class Row {
+        public float[] magnitudes = new float[0];
+        public float[] weights = new float[0];
+        public int[] bins = new int[0];
+        public float[] gx = new float[0];
+        public float[] gy = new float[0];
+
+        public Row ensure(int length) {
+            if (this.magnitudes.length < length) {
+                this.magnitudes = new float[length];
+                this.weights = new float[length];
+                this.bins = new int[length];
+                this.gx = new float[length];
+                this.gy = new float[length];
+            }
+            return this;
+        }
+    }
+
+    final class Holder {
+        private static final GradientBackend BACKEND = load();
+
+        private Holder() {}
+
+        private static GradientBackend load() {
+            if (!"false".equals(System.getProperty("hog.vector"))
+                    && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+                try {
+                    return (GradientBackend) Class.forName("hog.VectorGradientBackend").getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    // Fall through to the scalar backend
+                }
+            }
+            return new ScalarGradientBackend();
+        }
+    }
+}
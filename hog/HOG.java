@@ -1,22 +1,49 @@
 package hog;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.awt.Rectangle;
 
+import classifier.LinearSVM;
 import classifier.SVMHelper;
 import libsvm.svm_model;
 
+import utils.ByteImage;
+import utils.Detections;
+import utils.Filter;
+import utils.FloatImage;
 import utils.ImageHelper;
+import utils.ImagePyramid;
 import utils.RectangleHelper;
+import utils.Resizer;
 import utils.SobelFilter;
 
 public class HOG {
-    private float[][] image;
-    private float[][][] gradients;
-    private float[][] magnitudes;
-    private float[][] angles;
+    private static final int SCORE_BAND_ROWS = 16;
+    private static final int ROWS_PER_TASK = 8;
+    private static final long MAX_INTEGRAL_HISTOGRAM_BYTES = 256L << 20;
+
+    private FloatImage image;
+    private ByteImage bytes;
+    private OrientationTable table;
+    private boolean integerGradients;
+    private FloatImage gradients;
+    private FloatImage magnitudes;
+    private FloatImage angles;
     private svm_model model;
+    private Executor executor;
+    private boolean earlyRejection;
+    private float energyFloor;
+    private boolean integralHistogram;
+    private boolean fastPyramid;
+    private float pyramidLambda;
+    private Filter filter;
+    private ImagePyramid pyramid;
 
     private int[] size;
 
@@ -25,73 +52,419 @@ public class HOG {
     private short[] cells_per_block;
 
     public HOG(float[][] image, int nbins, short[] pixels_per_cell, short[] cells_per_block, svm_model model) {
+        this(FloatImage.fromArray(image), nbins, pixels_per_cell, cells_per_block, model);
+    }
+
+    /* Detector without an image of its own, for detectTiled */
+    public HOG(int nbins, short[] pixels_per_cell, short[] cells_per_block, svm_model model) {
+        this.nbins = nbins;
+        this.pixels_per_cell = pixels_per_cell;
+        this.cells_per_block = cells_per_block;
+        this.model = model;
+    }
+
+    public HOG(FloatImage image, int nbins, short[] pixels_per_cell, short[] cells_per_block, svm_model model) {
         this.image = image;
         this.nbins = nbins;
         this.pixels_per_cell = pixels_per_cell;
         this.cells_per_block = cells_per_block;
         this.model = model;
 
-        this.size = new int[] {this.image.length, this.image[0].length}; 
+        this.size = new int[] {this.image.height, this.image.width};
+    }
+
+    /*
+     * Detector on an 8-bit scene, stored as bytes. The gradient kernel widens pixels to float as it reads them and
+     * pyramid levels are resampled from the bytes into float, so features match those of the float path on the same
+     * pixels / 255. Paths that need the whole image in float (a custom filter, an ImagePyramid, integral histograms,
+     * energy maps) convert it once, on first use. See setIntegerGradients for the faster approximate kernel.
+     */
+    public HOG(ByteImage image, int nbins, short[] pixels_per_cell, short[] cells_per_block, svm_model model) {
+        this.bytes = image;
+        this.nbins = nbins;
+        this.pixels_per_cell = pixels_per_cell;
+        this.cells_per_block = cells_per_block;
+        this.model = model;
+
+        this.size = new int[] {image.height, image.width};
+    }
+
+    private synchronized FloatImage getImage() {
+        if (this.image == null) this.image = this.bytes.toFloatImage();
+        return this.image;
+    }
+
+    private synchronized OrientationTable getTable() {
+        if (this.table == null) this.table = new OrientationTable(this.nbins);
+        return this.table;
+    }
 
-        this.gradients = ImageHelper.applyFilter(this.image, SobelFilter.kernelX, SobelFilter.kernelY);
+    /* Gradient, magnitude and angle images are only materialized for the paths that read them per pixel */
+    private synchronized void computeGradients() {
+        if (this.magnitudes != null) return;
+        FloatImage image = this.getImage();
+        this.gradients = this.filter != null ? ImageHelper.applyFilter(image, this.filter) : ImageHelper.applyFilter(image, SobelFilter.kernelX, SobelFilter.kernelY);
         this.magnitudes = ImageHelper.getMagnitude(gradients);
         this.angles = ImageHelper.getAngle(gradients);
     }
 
     public float[] compute() {
-        int n_x_cells = this.image[0].length / this.pixels_per_cell[1];
-        int n_y_cells = this.image.length / this.pixels_per_cell[0];
+        float[][][] blocks = this.computeBlocks(this.computeHistograms());
+        if (blocks.length == 0 || blocks[0].length == 0) return new float[0];
+
+        return this.computeDescriptor(blocks, 0, 0, blocks[0].length, blocks.length);
+    }
+
+    /* Dense cell-histogram grid of the whole image, indexed as [cell_y][cell_x][bin] */
+    public float[][][] computeHistograms() {
+        int n_x_cells = this.size[1] / this.pixels_per_cell[1];
+        int n_y_cells = this.size[0] / this.pixels_per_cell[0];
+
+        float[] flat = new float[n_x_cells * n_y_cells * this.nbins];
+        if (this.bytes != null && this.filter == null && this.integerGradients) {
+            ByteImage bytes = this.bytes;
+            accumulateHistograms(bytes.data, bytes.offset, bytes.width, bytes.height, bytes.stride, this.getTable(), this.pixels_per_cell, n_x_cells, n_y_cells, flat);
+        } else if (this.bytes != null && this.filter == null) {
+            accumulateHistograms(this.bytes, this.nbins, this.pixels_per_cell, n_x_cells, n_y_cells, flat, new GradientBackend.Row());
+        } else {
+            accumulateHistograms(this.getImage(), this.nbins, this.pixels_per_cell, n_x_cells, n_y_cells, flat, new GradientBackend.Row(), this.filter);
+        }
 
         float[][][] histogram = new float[n_y_cells][n_x_cells][this.nbins];
 
         for (int y = 0; y < n_y_cells; y++) {
             for (int x = 0; x < n_x_cells; x++) {
-                histogram[y][x] = this.computeHistogram(x, y);
+                System.arraycopy(flat, (y * n_x_cells + x) * this.nbins, histogram[y][x], 0, this.nbins);
+            }
+        }
+
+        return histogram;
+    }
+
+    /*
+     * Fused kernel: a single sweep goes from pixels to Sobel gradient to magnitude, angle and the two interpolated
+     * bin votes, straight into the flat cell grid (cell (x, y) at offset (y * n_x_cells + x) * nbins). Only one row
+     * of magnitudes and bins is materialized, by the GradientBackend for the default Sobel operator (with the scalar
+     * backend the result matches applyFilter, getMagnitude, getAngle and vote bit for bit) or from the rows of the
+     * given filter otherwise.
+     */
+    static void accumulateHistograms(FloatImage image, int nbins, short[] pixels_per_cell, int n_x_cells, int n_y_cells, float[] histogram, GradientBackend.Row row, Filter filter) {
+        GradientBackend backend = GradientBackend.get();
+        int length = n_x_cells * pixels_per_cell[1];
+        row.ensure(length);
+
+        Arrays.fill(histogram, 0, n_x_cells * n_y_cells * nbins, 0.0f);
+
+        for (int y = 0; y < n_y_cells * pixels_per_cell[0]; y++) {
+            int cell_row = (y / pixels_per_cell[0]) * n_x_cells;
+            if (filter == null) {
+                backend.computeRow(image, y, length, nbins, row);
+            } else {
+                filter.apply(image, y, length, row.gx, row.gy);
+                ScalarGradientBackend.computeRow(row, length, nbins);
+            }
+
+            scatter(histogram, cell_row, nbins, pixels_per_cell, length, row);
+        }
+    }
+
+    /*
+     * Float kernel on 8-bit pixels: each byte is widened to v / 255 as the Sobel taps read it, so the histograms are
+     * those of the float path on ByteImage.toFloatImage() (bit for bit with the scalar backend) without a float copy
+     */
+    static void accumulateHistograms(ByteImage image, int nbins, short[] pixels_per_cell, int n_x_cells, int n_y_cells, float[] histogram, GradientBackend.Row row) {
+        int length = n_x_cells * pixels_per_cell[1];
+        row.ensure(length);
+
+        Arrays.fill(histogram, 0, n_x_cells * n_y_cells * nbins, 0.0f);
+
+        for (int y = 0; y < n_y_cells * pixels_per_cell[0]; y++) {
+            ScalarGradientBackend.computeRow(image, y, length, nbins, row);
+            scatter(histogram, (y / pixels_per_cell[0]) * n_x_cells, nbins, pixels_per_cell, length, row);
+        }
+    }
+
+    /* Adds the two interpolated votes of every pixel of a computed row to the cells of cell row cell_row */
+    private static void scatter(float[] histogram, int cell_row, int nbins, short[] pixels_per_cell, int length, GradientBackend.Row row) {
+        float[] magnitudes = row.magnitudes;
+        float[] weights = row.weights;
+        int[] bins = row.bins;
+        for (int x = 0; x < length; x++) {
+            int offset = (cell_row + x / pixels_per_cell[1]) * nbins;
+            int bin_0 = bins[x];
+            int bin_1 = bin_0 + 1 == nbins ? 0 : bin_0 + 1;
+            histogram[offset + bin_0] += magnitudes[x] * weights[x];
+            histogram[offset + bin_1] += magnitudes[x] * (1 - weights[x]);
+        }
+    }
+
+    /*
+     * Integer variant of the fused kernel for 8-bit grayscale pixels (row stride given in bytes): int Sobel responses
+     * index an OrientationTable for the bin and both votes, so there are no float gradients and no sqrt/atan2 calls.
+     * Agrees with the float path within the tolerance documented on OrientationTable.
+     */
+    static void accumulateHistograms(byte[] pixels, int offset, int width, int height, int stride, OrientationTable table, short[] pixels_per_cell, int n_x_cells, int n_y_cells, float[] histogram) {
+        int nbins = table.getNbins();
+
+        Arrays.fill(histogram, 0, n_x_cells * n_y_cells * nbins, 0.0f);
+
+        for (int y = 0; y < n_y_cells * pixels_per_cell[0]; y++) {
+            int cell_row = (y / pixels_per_cell[0]) * n_x_cells;
+            boolean border_row = y == 0 || y == height - 1;
+            int row = offset + y * stride;
+
+            for (int x = 0; x < n_x_cells * pixels_per_cell[1]; x++) {
+                int a, b, c, d, f, g, h, i;
+                if (border_row || x == 0 || x == width - 1) {
+                    a = sample(pixels, offset, width, height, stride, x - 1, y - 1);
+                    b = sample(pixels, offset, width, height, stride, x, y - 1);
+                    c = sample(pixels, offset, width, height, stride, x + 1, y - 1);
+                    d = sample(pixels, offset, width, height, stride, x - 1, y);
+                    f = sample(pixels, offset, width, height, stride, x + 1, y);
+                    g = sample(pixels, offset, width, height, stride, x - 1, y + 1);
+                    h = sample(pixels, offset, width, height, stride, x, y + 1);
+                    i = sample(pixels, offset, width, height, stride, x + 1, y + 1);
+                } else {
+                    a = pixels[row - stride + x - 1] & 0xFF;
+                    b = pixels[row - stride + x] & 0xFF;
+                    c = pixels[row - stride + x + 1] & 0xFF;
+                    d = pixels[row + x - 1] & 0xFF;
+                    f = pixels[row + x + 1] & 0xFF;
+                    g = pixels[row + stride + x - 1] & 0xFF;
+                    h = pixels[row + stride + x] & 0xFF;
+                    i = pixels[row + stride + x + 1] & 0xFF;
+                }
+
+                short gx = (short) (c - a + 2 * (f - d) + i - g);
+                short gy = (short) (g - a + 2 * (h - b) + i - c);
+
+                table.vote(histogram, (cell_row + x / pixels_per_cell[1]) * nbins, OrientationTable.index(gx, gy));
             }
         }
+    }
+
+    private static int sample(byte[] pixels, int offset, int width, int height, int stride, int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return 0;
+        return pixels[offset + y * stride + x] & 0xFF;
+    }
 
-        return this.computeDescriptor(histogram);
+    /* Splits a pixel's magnitude between the two bins around its angle; histogram starts at offset */
+    static void vote(float[] histogram, int offset, int nbins, float magnitude, float angle) {
+        float degree_per_bin = 360.0f / nbins;
+
+        // Calculate the bin index
+        int bin_0 = (((int) (angle / degree_per_bin)) % nbins + nbins) % nbins;
+        int bin_1 = (bin_0 + 1) % nbins;
+
+        // Interpolate the value for bin l and l + 1
+        float angle_0 = bin_0 * degree_per_bin;
+        float angle_1 = bin_1 * degree_per_bin;
+        float t = (angle_1 - angle) / (angle_1 - angle_0 + 1e-6f);
+
+        histogram[offset + bin_0] += magnitude * t;
+        histogram[offset + bin_1] += magnitude * (1 - t);
     }
 
-    private float[] computeHistogram(int x, int y) {
-        float[] histogram = new float[this.nbins];
-        float degree_per_bin = 360.0f / this.nbins;
+    /*
+     * Integral orientation histogram: one summed-area table per bin, interleaved as integral[y][x * nbins + bin] over
+     * (height + 1) x (width + 1) entries. Any rectangle's histogram then costs four lookups per bin.
+     */
+    public double[][] computeIntegralHistogram() {
+        this.computeGradients();
+        int height = this.size[0];
+        int width = this.size[1];
+
+        double[][] integral = new double[height + 1][(width + 1) * this.nbins];
+        float[] row_sum = new float[this.nbins];
 
-        for (int dy = 0; dy < pixels_per_cell[0]; dy++) {
-            for (int dx = 0; dx < pixels_per_cell[1]; dx++) {
-                int pixel_x = x * pixels_per_cell[1] + dx;
-                int pixel_y = y * pixels_per_cell[0] + dy;
+        for (int y = 0; y < height; y++) {
+            Arrays.fill(row_sum, 0.0f);
+            double[] previous = integral[y];
+            double[] current = integral[y + 1];
 
-                if (pixel_x >= image[0].length || pixel_y >= image.length) {
-                    continue;
+            for (int x = 0; x < width; x++) {
+                int index = this.magnitudes.index(x, y);
+                vote(row_sum, 0, this.nbins, this.magnitudes.data[index], this.angles.data[index]);
+
+                int offset = (x + 1) * this.nbins;
+                for (int i = 0; i < this.nbins; i++) {
+                    current[offset + i] = previous[offset + i] + row_sum[i];
                 }
+            }
+        }
+
+        return integral;
+    }
+
+    /* Histogram of the pixels in [start_x, end_x) x [start_y, end_y), read from an integral histogram */
+    public void computeHistogram(double[][] integral, int start_x, int start_y, int end_x, int end_y, float[] histogram) {
+        int a = start_x * this.nbins;
+        int b = end_x * this.nbins;
+        for (int i = 0; i < this.nbins; i++) {
+            histogram[i] = (float) (integral[end_y][b + i] - integral[start_y][b + i] - integral[end_y][a + i] + integral[start_y][a + i]);
+        }
+    }
 
-                float magnitude = this.magnitudes[pixel_y][pixel_x];
-                float angle = this.angles[pixel_y][pixel_x];
+    /*
+     * Cell grid read from an integral histogram, with cells of cell_width x cell_height pixels (not necessarily whole)
+     * starting at (origin_x, origin_y). Lets windows sit anywhere and cells be scaled instead of resampling the image.
+     */
+    public float[][][] computeHistograms(double[][] integral, float origin_x, float origin_y, float cell_width, float cell_height, int n_x_cells, int n_y_cells) {
+        int height = integral.length - 1;
+        int width = integral[0].length / this.nbins - 1;
 
-                // Calculate the bin index
-                int bin_0 = (((int) (angle / degree_per_bin)) % nbins + nbins) % nbins;
-                int bin_1 = (bin_0 + 1) % nbins;
+        float[][][] histogram = new float[n_y_cells][n_x_cells][this.nbins];
+
+        for (int y = 0; y < n_y_cells; y++) {
+            int start_y = Math.max(0, Math.min(height, Math.round(origin_y + y * cell_height)));
+            int end_y = Math.max(start_y, Math.min(height, Math.round(origin_y + (y + 1) * cell_height)));
 
-                // Interpolate the value for bin l and l + 1
-                float angle_0 = bin_0 * degree_per_bin;
-                float angle_1 = bin_1 * degree_per_bin;
-                float t = (angle_1 - angle) / (angle_1 - angle_0 + 1e-6f);
+            for (int x = 0; x < n_x_cells; x++) {
+                int start_x = Math.max(0, Math.min(width, Math.round(origin_x + x * cell_width)));
+                int end_x = Math.max(start_x, Math.min(width, Math.round(origin_x + (x + 1) * cell_width)));
 
-                histogram[bin_0] += magnitude * t;
-                histogram[bin_1] += magnitude * (1 - t);
+                this.computeHistogram(integral, start_x, start_y, end_x, end_y, histogram[y][x]);
             }
         }
 
         return histogram;
     }
 
-    private float[] computeDescriptor(float[][][] histogram) {
-        int n_x_cells = this.image[0].length / this.pixels_per_cell[1];
-        int n_y_cells = this.image.length / this.pixels_per_cell[0];
+    /*
+     * Approximates the cell grid of an image downscaled by 1 / factor (factor >= 1) from the grid of the original:
+     * every bin channel is resampled bilinearly and multiplied by factor^lambda, the power-law correction of
+     * Dollar et al., "Fast Feature Pyramids for Object Detection".
+     */
+    public float[][][] resampleHistograms(float[][][] histogram, int n_x_cells, int n_y_cells, float factor, float lambda) {
+        int source_height = histogram.length;
+        int source_width = source_height == 0 ? 0 : histogram[0].length;
+        float correction = (float) Math.pow(factor, lambda);
+
+        float[][][] resampled = new float[n_y_cells][n_x_cells][this.nbins];
+        if (source_width == 0) return resampled;
+
+        for (int y = 0; y < n_y_cells; y++) {
+            float source_y = Math.max(0.0f, Math.min(source_height - 1, (y + 0.5f) * factor - 0.5f));
+            int y1 = (int) source_y;
+            int y2 = Math.min(y1 + 1, source_height - 1);
+            float dy = source_y - y1;
+
+            for (int x = 0; x < n_x_cells; x++) {
+                float source_x = Math.max(0.0f, Math.min(source_width - 1, (x + 0.5f) * factor - 0.5f));
+                int x1 = (int) source_x;
+                int x2 = Math.min(x1 + 1, source_width - 1);
+                float dx = source_x - x1;
+
+                for (int i = 0; i < this.nbins; i++) {
+                    float value = (1 - dx) * (1 - dy) * histogram[y1][x1][i]
+                                + dx * (1 - dy) * histogram[y1][x2][i]
+                                + (1 - dx) * dy * histogram[y2][x1][i]
+                                + dx * dy * histogram[y2][x2][i];
+                    resampled[y][x][i] = value * correction;
+                }
+            }
+        }
+
+        return resampled;
+    }
+
+    /*
+     * Fits the power-law exponent used by resampleHistograms on this image: the mean cell energy of exactly computed
+     * grids at the given scales (< 1) is regressed against the scale in log-log space, mean(s) ~ mean(1) * s^-lambda.
+     */
+    public float fitPyramidLambda(float[] scales) {
+        double base = meanCellEnergy(this.computeHistograms());
+        double sum_xy = 0, sum_xx = 0;
+
+        for (float scale : scales) {
+            HOG hog = this.createLevel((int) (this.size[1] * scale), (int) (this.size[0] * scale), null);
+            double energy = meanCellEnergy(hog.computeHistograms());
+            if (energy <= 0 || base <= 0) continue;
+
+            double x = Math.log(scale);
+            sum_xy += x * Math.log(energy / base);
+            sum_xx += x * x;
+        }
+
+        return sum_xx == 0 ? 0.0f : (float) (-sum_xy / sum_xx);
+    }
+
+    /*
+     * Integral table of the cells' gradient energy. The two votes of a pixel add up to its magnitude, so a cell's bins
+     * sum to the magnitudes of its pixels and the table comes without a second gradient pass.
+     */
+    private static double[][] getCellEnergy(float[][][] histogram) {
+        int n_y_cells = histogram.length;
+        int n_x_cells = n_y_cells == 0 ? 0 : histogram[0].length;
+        double[][] integral = new double[n_y_cells + 1][n_x_cells + 1];
+
+        for (int y = 0; y < n_y_cells; y++) {
+            for (int x = 0; x < n_x_cells; x++) {
+                double sum = 0;
+                for (float value : histogram[y][x]) sum += value;
+                integral[y + 1][x + 1] = sum + integral[y][x + 1] + integral[y + 1][x] - integral[y][x];
+            }
+        }
+
+        return integral;
+    }
+
+    private static double meanCellEnergy(float[][][] histogram) {
+        double sum = 0;
+        int count = 0;
+        for (float[][] row : histogram) {
+            for (float[] cell : row) {
+                for (float value : cell) sum += value;
+                count++;
+            }
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /* L2-normalized block map, indexed as [block_y][block_x][block_descriptor]; every block is normalized exactly once */
+    public float[][][] computeBlocks(float[][][] histogram) {
+        int n_x_blocks = histogram[0].length - this.cells_per_block[1] + 1;
+        int n_y_blocks = histogram.length - this.cells_per_block[0] + 1;
+        int block_descriptor_length = this.cells_per_block[0] * this.cells_per_block[1] * this.nbins;
+
+        float[][][] blocks = new float[Math.max(0, n_y_blocks)][Math.max(0, n_x_blocks)][block_descriptor_length];
+
+        for (int y = 0; y < n_y_blocks; y++) {
+            for (int x = 0; x < n_x_blocks; x++) {
+                float[] block_descriptor = blocks[y][x];
+
+                int block_index = 0;
+                for (int dy = 0; dy < this.cells_per_block[0]; dy++) {
+                    for (int dx = 0; dx < this.cells_per_block[1]; dx++) {
+                        System.arraycopy(histogram[y + dy][x + dx], 0, block_descriptor, block_index, this.nbins);
+                        block_index += this.nbins;
+                    }
+                }
+
+                normalizeBlock(block_descriptor, 0, block_index);
+            }
+        }
+
+        return blocks;
+    }
+
+    /* L2-normalizes values[start, end) in place and clips them to [0, 1]; shared by every block-normalizing path */
+    static void normalizeBlock(float[] values, int start, int end) {
+        float squared_sum = 0.0f;
+        for (int i = start; i < end; i++) {
+            squared_sum += values[i] * values[i];
+        }
+
+        float sqrt_sum = (float) Math.sqrt(squared_sum);
+
+        for (int i = start; i < end; i++) {
+            float normalized_value = (float) (values[i] / (sqrt_sum + 1e-6));
+            values[i] = Math.max(0.0f, Math.min(1.0f, normalized_value));
+        }
+    }
 
-        int n_x_blocks = n_x_cells - this.cells_per_block[1] + 1;
-        int n_y_blocks = n_y_cells - this.cells_per_block[0] + 1;
+    /* Descriptor of the n_x_blocks x n_y_blocks window whose top-left block is (block_x, block_y) */
+    public float[] computeDescriptor(float[][][] blocks, int block_x, int block_y, int n_x_blocks, int n_y_blocks) {
         int block_descriptor_length = this.cells_per_block[0] * this.cells_per_block[1] * this.nbins;
 
         float[] descriptor = new float[n_x_blocks * n_y_blocks * block_descriptor_length];
@@ -100,75 +473,269 @@ public class HOG {
 
         for (int y = 0; y < n_y_blocks; y++) {
             for (int x = 0; x < n_x_blocks; x++) {
-                float[] block_descriptor = new float[block_descriptor_length];
+                System.arraycopy(blocks[block_y + y][block_x + x], 0, descriptor, descriptor_index, block_descriptor_length);
+                descriptor_index += block_descriptor_length;
+            }
+        }
 
-                int block_index = 0;
-                float squared_sum = 0.0f;
+        return descriptor;
+    }
 
-                for (int dy = 0; dy < this.cells_per_block[0]; dy++) {
-                    for (int dx = 0; dx < this.cells_per_block[1]; dx++) {
-                        for (int i = 0; i < this.nbins; i++) {
-                            block_descriptor[block_index] = histogram[y + dy][x + dx][i];
-                            squared_sum += block_descriptor[block_index] * block_descriptor[block_index];
-                            block_index++;
+    /*
+     * Correlates a linear weight template (laid out like a window descriptor) with the block map and returns the
+     * unbiased scores w . x of every window position, sampled every x_step/y_step blocks. The template is swept one
+     * block at a time over bands of output rows, so the active slice of w and the touched block rows stay in cache.
+     */
+    public double[][] computeScoreMap(float[][][] blocks, float[] w, int n_x_window_blocks, int n_y_window_blocks, int x_step, int y_step) {
+        int n_y_blocks = blocks.length;
+        int n_rows = n_y_blocks < n_y_window_blocks ? 0 : (n_y_blocks - n_y_window_blocks) / y_step + 1;
+
+        return this.computeScoreMap(blocks, w, n_x_window_blocks, n_y_window_blocks, x_step, y_step, 0, n_rows);
+    }
+
+    /* Rows [row_start, row_end) of the score map, so that large levels can be scored in independent bands */
+    public double[][] computeScoreMap(float[][][] blocks, float[] w, int n_x_window_blocks, int n_y_window_blocks, int x_step, int y_step, int row_start, int row_end) {
+        return this.computeScoreMap(blocks, w, n_x_window_blocks, n_y_window_blocks, x_step, y_step, row_start, row_end, null);
+    }
+
+    /* Same, leaving the windows flagged in skip (indexed like the returned rows) unscored at 0 */
+    public double[][] computeScoreMap(float[][][] blocks, float[] w, int n_x_window_blocks, int n_y_window_blocks, int x_step, int y_step, int row_start, int row_end, boolean[][] skip) {
+        int n_y_blocks = blocks.length;
+        int n_x_blocks = n_y_blocks == 0 ? 0 : blocks[0].length;
+        int block_descriptor_length = this.cells_per_block[0] * this.cells_per_block[1] * this.nbins;
+
+        int n_cols = n_x_blocks < n_x_window_blocks ? 0 : (n_x_blocks - n_x_window_blocks) / x_step + 1;
+        checkDescriptorLength(w, n_x_window_blocks * n_y_window_blocks * block_descriptor_length);
+
+        double[][] scores = new double[Math.max(0, row_end - row_start)][n_cols];
+
+        for (int band = row_start; band < row_end; band += SCORE_BAND_ROWS) {
+            int band_end = Math.min(row_end, band + SCORE_BAND_ROWS);
+
+            for (int dy = 0; dy < n_y_window_blocks; dy++) {
+                for (int dx = 0; dx < n_x_window_blocks; dx++) {
+                    int offset = (dy * n_x_window_blocks + dx) * block_descriptor_length;
+
+                    for (int row = band; row < band_end; row++) {
+                        float[][] block_row = blocks[row * y_step + dy];
+                        double[] score_row = scores[row - row_start];
+                        boolean[] skip_row = skip == null ? null : skip[row - row_start];
+
+                        for (int col = 0; col < n_cols; col++) {
+                            if (skip_row != null && skip_row[col]) continue;
+                            float[] block = block_row[col * x_step + dx];
+                            double sum = 0;
+                            for (int i = 0; i < block_descriptor_length; i++) {
+                                sum += w[offset + i] * block[i];
+                            }
+                            score_row[col] += sum;
                         }
                     }
                 }
+            }
+        }
+
+        return scores;
+    }
+
+    private static void checkDescriptorLength(float[] w, int descriptor_length) {
+        checkDescriptorLength(w.length, descriptor_length);
+    }
+
+    private static void checkDescriptorLength(int model_length, int descriptor_length) {
+        if (descriptor_length != model_length) {
+            throw new IllegalArgumentException("Window descriptor length " + descriptor_length + " does not match the model's " + model_length + "!");
+        }
+    }
 
-                float sqrt_sum = (float) Math.sqrt(squared_sum);
+    /*
+     * Unbiased score w . x of the window whose top-left block is (block_x, block_y), accumulated block by block in the
+     * same order as computeScoreMap. Returns NaN as soon as the partial sum plus bounds[k] (the most the remaining blocks
+     * can add, see LinearSVM.computeRemainingBounds) can no longer reach reject_below.
+     */
+    public double computeWindowScore(float[][][] blocks, float[] w, double[] bounds, int n_x_window_blocks, int n_y_window_blocks, int block_x, int block_y, double reject_below) {
+        int block_descriptor_length = this.cells_per_block[0] * this.cells_per_block[1] * this.nbins;
+        checkDescriptorLength(w, n_x_window_blocks * n_y_window_blocks * block_descriptor_length);
+        double score = 0;
+
+        for (int dy = 0; dy < n_y_window_blocks; dy++) {
+            for (int dx = 0; dx < n_x_window_blocks; dx++) {
+                int k = dy * n_x_window_blocks + dx;
+                if (k >= bounds.length - 1) return score;
+                if (score + bounds[k] < reject_below) return Double.NaN;
 
-                for (int i = 0; i < block_index; i++) {
-                    float normalized_value = (float) (block_descriptor[i] / (sqrt_sum + 1e-6));
-                    descriptor[descriptor_index++] = Math.max(0.0f, Math.min(1.0f, normalized_value));
+                int offset = k * block_descriptor_length;
+                float[] block = blocks[block_y + dy][block_x + dx];
+
+                double sum = 0;
+                for (int i = 0; i < block_descriptor_length; i++) {
+                    sum += w[offset + i] * block[i];
                 }
+                score += sum;
             }
         }
 
-        return descriptor;
+        return score;
+    }
+
+    public FloatImage getMagnitudes() {
+        this.computeGradients();
+        return this.magnitudes;
     }
 
     public List<Rectangle> detectMultiScale(short[] winSize, short[] winStride, float scaleFactor, float threshold, int groupThreshold) {
-        List<Rectangle> detections = new ArrayList<>();
-        List<Float> weights = new ArrayList<>();
-    
+        // Windows are resampled to this image's size, as they were before modelSize existed
+        return this.detectMultiScale(winSize, winStride, scaleFactor, threshold, groupThreshold, new int[]{this.size[0], this.size[1]});
+    }
+
+    /*
+     * modelSize is the {height, width} the model was trained on. When given, every pyramid level is resampled so that
+     * a winSize window covers exactly modelSize pixels and windows are scored natively at the model geometry. With null
+     * windows are read at winSize, which then has to match the training size. The overload without modelSize uses this
+     * image's size, so it suits detectors built on a training-size image.
+     *
+     * Levels are built, and scored in bands of rows, on the executor set with setExecutor. Candidates are merged in
+     * level and row order and NMS draws its perturbations from a fixed seed (see GridNMS), so the result depends
+     * neither on how the tasks were scheduled nor on the run.
+     */
+    public List<Rectangle> detectMultiScale(short[] winSize, short[] winStride, float scaleFactor, float threshold, int groupThreshold, int[] modelSize) {
+        return this.detect(winSize, winStride, scaleFactor, threshold, groupThreshold, modelSize).toRectangles();
+    }
+
+    /* Same as detectMultiScale, keeping the merged boxes with their scores and levels in a Detections buffer */
+    public Detections detect(short[] winSize, short[] winStride, float scaleFactor, float threshold, int groupThreshold, int[] modelSize) {
+        Detections detections = new Detections();
+        this.collectCandidates(winSize, winStride, scaleFactor, 1.0f, 0.0f, 0, threshold, modelSize, this.compileLinear(), detections);
+        return mergeCandidates(detections, groupThreshold);
+    }
+
+    /*
+     * Tiled detection for scenes too large to hold in memory. The pyramid is processed one octave at a time: octave k
+     * (levels with scale in (2^-(k+1), 2^-k]) reads the scene with decode-time subsampling by 2^k, so coarse levels
+     * never decode the pixels they would throw away. Each octave is read one tile at a time: a tileSize x tileSize
+     * core plus a halo of one window of the octave's coarsest level (2 * winSize) on the right and bottom and a few
+     * pixels of context on the left and top. A tile keeps only the windows whose origin lies in its core, so every
+     * window belongs to exactly one tile and windows crossing a seam are still seen whole. Candidates of all tiles are
+     * merged before NMS. Tiles are views into one full-width strip per row of tiles, so peak memory is set by tileSize
+     * and the scene width, not by the scene height.
+     *
+     * Levels stop above minScale. Cell grids are anchored at each tile and coarse octaves start from decimated rather
+     * than filtered pixels, so positions can differ from detectMultiScale on the whole scene by about a window stride.
+     */
+    public Detections detectTiled(String filePath, int tileSize, short[] winSize, short[] winStride, float scaleFactor, float minScale, float threshold, int groupThreshold, int[] modelSize) {
+        if (tileSize <= 0 || minScale < 0 || minScale >= 1) {
+            throw new IllegalArgumentException("Tile size must be positive and minimum scale in [0, 1)!");
+        }
+
+        int[] sceneSize = ImageHelper.getImageSize(filePath);
+        if (sceneSize == null) {
+            throw new IllegalArgumentException("Cannot read image: " + filePath);
+        }
+
+        int window = Math.max(winSize[0], winSize[1]);
+        int halo = 2 * window;
+        int margin = 4;
+
+        Detections detections = new Detections();
+        Detections tileDetections = new Detections();
+        LinearSVM linear = this.compileLinear();
+
         float scale = 1.0f;
-    
-        while (true) {
-            float[][] scaledImage = (float[][]) ImageHelper.scale(this.image, scale);
+        int level = 0;
+        for (int subsampling = 1; scale > minScale; subsampling *= 2) {
+            // First level of this octave, following the same sequence of divisions as detectMultiScale
+            while (scale * subsampling > 1.0f) {
+                scale /= scaleFactor;
+                level++;
+            }
+            if (scale <= minScale) break;
+            if (scale * subsampling <= 0.5f) continue;
 
-            int scaledHeight = scaledImage.length;
-            int scaledWidth = scaledImage[0].length;
-    
-            int windowHeight = winSize[0];
-            int windowWidth = winSize[1];
+            int width = (sceneSize[1] + subsampling - 1) / subsampling;
+            int height = (sceneSize[0] + subsampling - 1) / subsampling;
+            if (width < winSize[1] || height < winSize[0]) break;
 
-            if (scaledHeight < windowHeight || scaledWidth < windowWidth) break;
-    
-            for (int y = 0; y <= scaledHeight - windowHeight; y += winStride[0]) {
-                for (int x = 0; x <= scaledWidth - windowWidth; x += winStride[1]) {
-                    float[][] window = (float[][]) ImageHelper.crop(scaledImage, x, y, windowWidth, windowHeight);
-                    if (window == null) continue;
-                    window = (float[][]) ImageHelper.resize(window, this.size[1], this.size[0], "bilinear");
-                    HOG hog = new HOG(window, nbins, pixels_per_cell, cells_per_block, model);
-                    float[] descriptor = hog.compute();
-                    double[] scores = SVMHelper.predict_probability(this.model, descriptor);
-                    // System.out.println("Scores: " + scores[0] + ", " + scores[1]);
-                    if (scores[0] > threshold) {
-                        int originalX = (int) (x / scale);
-                        int originalY = (int) (y / scale);
-                        int originalWidth = (int) (windowWidth / scale);
-                        int originalHeight = (int) (windowHeight / scale);
-    
-                        detections.add(new Rectangle(originalX, originalY, originalWidth, originalHeight));
-                        weights.add((float) scores[0]);
+            float startScale = scale * subsampling;
+            float stopScale = Math.max(0.5f, minScale * subsampling);
+
+            for (int tile_y = 0; tile_y < height; tile_y += tileSize) {
+                int start_y = Math.max(0, tile_y - margin);
+                int end_y = Math.min(height, tile_y + tileSize + halo + margin);
+
+                // One decode per row of tiles: region reads of compressed formats re-inflate from the top of the image
+                Rectangle region = new Rectangle(0, start_y * subsampling, sceneSize[1], Math.min(sceneSize[0], end_y * subsampling) - start_y * subsampling);
+                FloatImage strip = ImageHelper.loadImage(filePath, region, subsampling, "grayscale");
+
+                for (int tile_x = 0; tile_x < width; tile_x += tileSize) {
+                    int start_x = Math.max(0, tile_x - margin);
+                    int end_x = Math.min(strip.width, tile_x + tileSize + halo + margin);
+
+                    HOG hog = this.withImage(ImageHelper.cropView(strip, start_x, 0, end_x - start_x, strip.height));
+
+                    tileDetections.clear();
+                    hog.collectCandidates(winSize, winStride, scaleFactor, startScale, stopScale, level, threshold, modelSize, linear, tileDetections);
+
+                    for (int i = 0; i < tileDetections.size(); i++) {
+                        int x = tileDetections.x[i] + start_x;
+                        int y = tileDetections.y[i] + start_y;
+                        if (x < tile_x || x >= tile_x + tileSize || y < tile_y || y >= tile_y + tileSize) continue;
+                        tileDetections.transform(i, start_x, start_y, subsampling);
+                        detections.add(tileDetections, i);
                     }
                 }
             }
-            scale /= scaleFactor;
         }
 
-        List<Rectangle> rects = RectangleHelper.proposedNMS(detections, weights, 0.3f);
-        List<Rectangle> mergedRects = RectangleHelper.groupRectangles(rects, groupThreshold, 0.5f);
+        return mergeCandidates(detections, groupThreshold);
+    }
+
+    /* Linear models are scored with one dot product per window instead of one kernel evaluation per SV */
+    private LinearSVM compileLinear() {
+        return LinearSVM.isLinear(this.model) && this.model.probA != null ? new LinearSVM(this.model) : null;
+    }
+
+    /* Detector on this image resampled to width x height, taken from pyramid when one is given */
+    private HOG createLevel(int width, int height, ImagePyramid pyramid) {
+        HOG hog;
+        if (this.bytes != null && pyramid == null && this.filter == null && this.integerGradients) {
+            hog = new HOG(ImageHelper.resize(this.bytes, width, height, "bilinear"), nbins, pixels_per_cell, cells_per_block, model);
+            hog.table = this.getTable();
+            hog.integerGradients = true;
+        } else if (this.bytes != null && pyramid == null && this.filter == null) {
+            // Same resampling as the float path, reading the bytes directly; a same-size level is the scene itself
+            if (width == this.bytes.width && height == this.bytes.height) {
+                hog = new HOG(this.bytes, nbins, pixels_per_cell, cells_per_block, model);
+            } else {
+                FloatImage scaledImage = new FloatImage(width, height, 1);
+                Resizer.get(this.bytes.width, this.bytes.height, width, height, "bilinear").resize(this.bytes, scaledImage);
+                hog = new HOG(scaledImage, nbins, pixels_per_cell, cells_per_block, model);
+            }
+        } else {
+            FloatImage scaledImage = pyramid != null ? pyramid.getLevel(width, height) : ImageHelper.resize(this.getImage(), width, height, "bilinear");
+            hog = new HOG(scaledImage, nbins, pixels_per_cell, cells_per_block, model);
+        }
+        hog.filter = this.filter;
+        return hog;
+    }
+
+    /* New detector on another image with the same parameters, model and detection options */
+    private HOG withImage(FloatImage image) {
+        HOG hog = new HOG(image, this.nbins, this.pixels_per_cell, this.cells_per_block, this.model);
+        hog.executor = this.executor;
+        hog.earlyRejection = this.earlyRejection;
+        hog.energyFloor = this.energyFloor;
+        hog.integralHistogram = this.integralHistogram;
+        hog.fastPyramid = this.fastPyramid;
+        hog.pyramidLambda = this.pyramidLambda;
+        hog.filter = this.filter;
+        hog.pyramid = this.pyramid;
+        hog.integerGradients = this.integerGradients;
+        return hog;
+    }
+
+    private static Detections mergeCandidates(Detections detections, int groupThreshold) {
+        Detections rects = RectangleHelper.proposedNMS(detections, 0.3f);
+        Detections mergedRects = RectangleHelper.groupRectangles(rects, groupThreshold, 0.5f);
         if (mergedRects.size() == 0){
             System.out.println("No rectangles detected.");
         }
@@ -179,6 +746,231 @@ public class HOG {
         return mergedRects;
     }
 
+    /*
+     * Scores the pyramid levels from startScale down to (excluding) stopScale and appends the windows above threshold,
+     * in the coordinates of this image. The level at startScale is numbered firstLevel; linear is the compiled model
+     * (see compileLinear), or null to evaluate the SVM per window.
+     */
+    private void collectCandidates(short[] winSize, short[] winStride, float scaleFactor, float startScale, float stopScale, int firstLevel, float threshold, int[] modelSize, LinearSVM linear, Detections detections) {
+        Executor executor = this.executor != null ? this.executor : Runnable::run;
+
+        // Early rejection compares partial sums against the decision value the threshold corresponds to, with a small
+        // margin for rounding so that only windows that cannot pass are dropped
+        double decision_threshold = linear != null && this.earlyRejection ? linear.decisionThreshold(threshold) : Double.NaN;
+        double reject_below = Double.isNaN(decision_threshold) ? Double.NaN : decision_threshold + linear.getRho() - 1e-6 * Math.max(1.0, Math.abs(decision_threshold + linear.getRho()));
+        double[] bounds = Double.isNaN(reject_below) ? null : linear.computeRemainingBounds(cells_per_block[0] * cells_per_block[1] * nbins);
+
+        int windowHeight = modelSize == null ? winSize[0] : modelSize[0];
+        int windowWidth = modelSize == null ? winSize[1] : modelSize[1];
+        float x_ratio = (float) windowWidth / winSize[1];
+        float y_ratio = (float) windowHeight / winSize[0];
+
+        int n_x_window_cells = windowWidth / pixels_per_cell[1];
+        int n_y_window_cells = windowHeight / pixels_per_cell[0];
+        int n_x_window_blocks = windowWidth / pixels_per_cell[1] - cells_per_block[1] + 1;
+        int n_y_window_blocks = windowHeight / pixels_per_cell[0] - cells_per_block[0] + 1;
+        int x_cell_stride = Math.max(1, Math.round(winStride[1] * x_ratio / pixels_per_cell[1]));
+        int y_cell_stride = Math.max(1, Math.round(winStride[0] * y_ratio / pixels_per_cell[0]));
+
+        // Windows have to produce descriptors of the length the model was trained on, see modelSize
+        checkDescriptorLength(linear != null ? linear.getWeights().length : SVMHelper.getDimension(this.model), n_x_window_blocks * n_y_window_blocks * cells_per_block[0] * cells_per_block[1] * nbins);
+
+        // In integral histogram mode cells are scaled over the full-resolution image instead of resampling it per level;
+        // images whose table would exceed the memory cap are scored per level as without it
+        long integral_bytes = (long) (this.size[0] + 1) * (this.size[1] + 1) * this.nbins * Double.BYTES;
+        double[][] integral = this.integralHistogram && integral_bytes <= MAX_INTEGRAL_HISTOGRAM_BYTES ? this.computeIntegralHistogram() : null;
+
+        // Levels come from the nearest octave of the shared pyramid instead of resampling the full image each time
+        ImagePyramid pyramid = this.pyramid;
+        if (pyramid != null) pyramid.setImage(this.getImage());
+
+        Map<Integer, CompletableFuture<Octave>> octaves = new HashMap<>();
+        List<CompletableFuture<Detections>> tasks = new ArrayList<>();
+    
+        float scale = startScale;
+        int levelIndex = firstLevel;
+    
+        while (true) {
+            int scaledWidth = (int) (this.size[1] * scale * x_ratio);
+            int scaledHeight = (int) (this.size[0] * scale * y_ratio);
+
+            if (scaledHeight < windowHeight || scaledWidth < windowWidth || scale <= stopScale) break;
+
+            int n_y_blocks = scaledHeight / pixels_per_cell[0] - cells_per_block[0] + 1;
+            int n_rows = n_y_blocks < n_y_window_blocks ? 0 : (n_y_blocks - n_y_window_blocks) / y_cell_stride + 1;
+
+            float levelScale = scale;
+            int index = levelIndex;
+            CompletableFuture<Level> level;
+            if (this.fastPyramid && integral == null) {
+                // Exact features only at octaves; the levels in between resample the octave's cell grid
+                int octave = (int) Math.floor(Math.log(1.0 / levelScale) / Math.log(2.0) + 1e-6);
+                float octaveScale = (float) Math.pow(2.0, -octave);
+                CompletableFuture<Octave> exact = octaves.computeIfAbsent(octave, o -> CompletableFuture.supplyAsync(() -> {
+                    int octaveWidth = (int) (this.size[1] * octaveScale * x_ratio);
+                    int octaveHeight = (int) (this.size[0] * octaveScale * y_ratio);
+                    HOG hog = this.createLevel(octaveWidth, octaveHeight, pyramid);
+                    float[][][] histogram = hog.computeHistograms();
+                    return new Octave(octaveScale, histogram, this.energyFloor > 0 ? getCellEnergy(histogram) : null);
+                }, executor));
+
+                level = exact.thenApplyAsync(e -> {
+                    float factor = e.scale / levelScale;
+                    float[][][] histogram = this.resampleHistograms(e.histogram, scaledWidth / pixels_per_cell[1], scaledHeight / pixels_per_cell[0], factor, this.pyramidLambda);
+                    return new Level(levelScale, this, this.computeBlocks(histogram), e.energy, factor, factor, pixels_per_cell[0] * pixels_per_cell[1]);
+                }, executor);
+            } else {
+                level = CompletableFuture.supplyAsync(() -> {
+                    // Windows are read out of the level's block map, so positions and strides snap to whole cells
+                    if (integral != null) {
+                        float x_factor = 1.0f / (levelScale * x_ratio);
+                        float y_factor = 1.0f / (levelScale * y_ratio);
+                        float[][][] histogram = this.computeHistograms(integral, 0, 0, pixels_per_cell[1] * x_factor, pixels_per_cell[0] * y_factor, scaledWidth / pixels_per_cell[1], scaledHeight / pixels_per_cell[0]);
+                        double[][] energy = this.energyFloor > 0 ? getCellEnergy(histogram) : null;
+                        return new Level(levelScale, this, this.computeBlocks(histogram), energy, 1.0f, 1.0f, pixels_per_cell[0] * x_factor * pixels_per_cell[1] * y_factor);
+                    }
+                    HOG hog = this.createLevel(scaledWidth, scaledHeight, pyramid);
+                    float[][][] histogram = hog.computeHistograms();
+                    double[][] energy = this.energyFloor > 0 ? getCellEnergy(histogram) : null;
+                    return new Level(levelScale, hog, hog.computeBlocks(histogram), energy, 1.0f, 1.0f, pixels_per_cell[0] * pixels_per_cell[1]);
+                }, executor);
+            }
+
+            for (int band = 0; band < n_rows; band += ROWS_PER_TASK) {
+                int row_start = band;
+                int row_end = Math.min(n_rows, band + ROWS_PER_TASK);
+                tasks.add(level.thenApplyAsync(l -> {
+                    Detections candidates = new Detections();
+                    int n_x_blocks = l.blocks.length == 0 ? 0 : l.blocks[0].length;
+                    int n_cols = n_x_blocks < n_x_window_blocks ? 0 : (n_x_blocks - n_x_window_blocks) / x_cell_stride + 1;
+
+                    // Low-energy windows are flagged before scoring so that none of the paths below spends work on them
+                    boolean[][] skip = null;
+                    if (l.energy != null) {
+                        skip = new boolean[row_end - row_start][n_cols];
+                        for (int row = row_start; row < row_end; row++) {
+                            for (int col = 0; col < n_cols; col++) {
+                                skip[row - row_start][col] = l.isLowEnergy(col * x_cell_stride, row * y_cell_stride, n_x_window_cells, n_y_window_cells, this.energyFloor);
+                            }
+                        }
+                    }
+
+                    // With a linear model every window of the band is scored in one pass over the block map
+                    double[][] scoreMap = linear != null && bounds == null ? l.hog.computeScoreMap(l.blocks, linear.getWeights(), n_x_window_blocks, n_y_window_blocks, x_cell_stride, y_cell_stride, row_start, row_end, skip) : null;
+
+                    for (int row = row_start; row < row_end; row++) {
+                        for (int col = 0; col < n_cols; col++) {
+                            int cell_x = col * x_cell_stride;
+                            int cell_y = row * y_cell_stride;
+
+                            if (skip != null && skip[row - row_start][col]) continue;
+
+                            double[] scores;
+                            if (bounds != null) {
+                                double score = l.hog.computeWindowScore(l.blocks, linear.getWeights(), bounds, n_x_window_blocks, n_y_window_blocks, cell_x, cell_y, reject_below);
+                                if (Double.isNaN(score)) continue;
+                                scores = linear.probability(score - linear.getRho());
+                            } else if (scoreMap != null) {
+                                scores = linear.probability(scoreMap[row - row_start][col] - linear.getRho());
+                            } else {
+                                float[] descriptor = l.hog.computeDescriptor(l.blocks, cell_x, cell_y, n_x_window_blocks, n_y_window_blocks);
+                                scores = SVMHelper.predict_probability(this.model, descriptor);
+                            }
+                            // System.out.println("Scores: " + scores[0] + ", " + scores[1]);
+                            if (scores[0] > threshold) {
+                                int x = cell_x * pixels_per_cell[1];
+                                int y = cell_y * pixels_per_cell[0];
+
+                                int originalX = (int) (x / (l.scale * x_ratio));
+                                int originalY = (int) (y / (l.scale * y_ratio));
+                                int originalWidth = (int) (winSize[1] / l.scale);
+                                int originalHeight = (int) (winSize[0] / l.scale);
+
+                                candidates.add(originalX, originalY, originalWidth, originalHeight, (float) scores[0], index);
+                            }
+                        }
+                    }
+                    return candidates;
+                }, executor));
+            }
+            scale /= scaleFactor;
+            levelIndex++;
+        }
+
+        for (CompletableFuture<Detections> task : tasks) {
+            detections.addAll(task.join());
+        }
+    }
+
+    /*
+     * Scores linear-model windows block by block and drops them once the threshold is out of reach, instead of filling
+     * the whole score map. Detections are identical; it pays off when most windows are clear background.
+     */
+    public void setEarlyRejection(boolean earlyRejection) {
+        this.earlyRejection = earlyRejection;
+    }
+
+    /*
+     * Windows whose mean gradient magnitude per pixel is below energyFloor are skipped before they are scored, which
+     * drops flat regions such as open water in O(1) per window. 0 (the default) disables the check.
+     */
+    public void setEnergyFloor(float energyFloor) {
+        this.energyFloor = energyFloor;
+    }
+
+    /*
+     * Builds one integral orientation histogram of the full-resolution image and reads every pyramid level's cells from
+     * it with scaled cell sizes, instead of resampling the image and recomputing gradients per level.
+     *
+     * The table takes 8 * nbins bytes per pixel (about 2.3 GB for a 4000 x 4000 image at 18 bins) on top of the
+     * gradient images. Above 256 MB detection falls back to per-level histograms; use detectTiled, whose tiles stay
+     * under the cap, to keep the integral path on large scenes.
+     */
+    public void setIntegralHistogram(boolean integralHistogram) {
+        this.integralHistogram = integralHistogram;
+    }
+
+    /*
+     * Computes features exactly only at octave levels (scales 1, 1/2, 1/4, ...) and derives the levels in between by
+     * resampling the octave's cell grid with the correction factor^lambda (see fitPyramidLambda). Block normalization
+     * cancels most of the correction, so lambda only matters for near-empty blocks.
+     */
+    public void setFastPyramid(boolean fastPyramid, float lambda) {
+        this.fastPyramid = fastPyramid;
+        this.pyramidLambda = lambda;
+    }
+
+    /*
+     * Gradient operator used for the cell histograms, e.g. CentralDifferenceFilter for the cheaper [-1, 0, 1] mask.
+     * null (the default) keeps the fused Sobel kernel; models must be trained with the same operator.
+     */
+    public void setFilter(Filter filter) {
+        this.filter = filter;
+    }
+
+    /*
+     * For detectors on a ByteImage: takes the cell histograms from the integer OrientationTable kernel and resizes
+     * levels as bytes. Faster, but features only approximate the float path (see OrientationTable for the error),
+     * so scores drift from those of a model trained on float features. Off by default.
+     */
+    public void setIntegerGradients(boolean integerGradients) {
+        this.integerGradients = integerGradients;
+    }
+
+    /*
+     * Builds pyramid levels with the given ImagePyramid (2x box-reduced octaves, each level resampled from the nearest
+     * octave) instead of resampling the full image per level. The pyramid keeps its buffers, so passing the same one
+     * to the detectors of successive same-sized scenes reuses them; it must not be shared by concurrent detections.
+     * null (the default) resamples from the full image.
+     */
+    public void setImagePyramid(ImagePyramid pyramid) {
+        this.pyramid = pyramid;
+    }
+
+    /* Runs detection tasks on the given executor (e.g. a ForkJoinPool); null scores everything on the calling thread */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
 
     public static int computeHOGFeatureLength(int[] imageSize, int nbins, short[] pixels_per_cell, short[] cells_per_block) {
         int image_width = imageSize[0];
@@ -197,4 +989,50 @@ public class HOG {
         int block_descriptor_length = blockWidth * blockHeight * nbins;
         return n_x_blocks * n_y_blocks * block_descriptor_length;
     }
+
+    private static final class Level {
+        private final float scale;
+        private final HOG hog;
+        private final float[][][] blocks;
+        private final double[][] energy;
+        private final float energy_x_factor;
+        private final float energy_y_factor;
+        private final float energy_cell_area;
+
+        private Level(float scale, HOG hog, float[][][] blocks, double[][] energy, float energy_x_factor, float energy_y_factor, float energy_cell_area) {
+            this.scale = scale;
+            this.hog = hog;
+            this.blocks = blocks;
+            this.energy = energy;
+            this.energy_x_factor = energy_x_factor;
+            this.energy_y_factor = energy_y_factor;
+            this.energy_cell_area = energy_cell_area;
+        }
+
+        /* Window of level cells against the cell energy table, whose cells may be coarser than the level's */
+        private boolean isLowEnergy(int cell_x, int cell_y, int n_x_cells, int n_y_cells, float floor) {
+            int energy_width = this.energy[0].length - 1;
+            int energy_height = this.energy.length - 1;
+
+            int start_x = Math.min(energy_width - 1, (int) (cell_x * this.energy_x_factor));
+            int start_y = Math.min(energy_height - 1, (int) (cell_y * this.energy_y_factor));
+            int region_width = Math.max(1, Math.min(energy_width - start_x, (int) (n_x_cells * this.energy_x_factor)));
+            int region_height = Math.max(1, Math.min(energy_height - start_y, (int) (n_y_cells * this.energy_y_factor)));
+
+            double energy = ImageHelper.sumRegion(this.energy, start_x, start_y, region_width, region_height);
+            return energy < floor * region_width * region_height * this.energy_cell_area;
+        }
+    }
+
+    private static final class Octave {
+        private final float scale;
+        private final float[][][] histogram;
+        private final double[][] energy;
+
+        private Octave(float scale, float[][][] histogram, double[][] energy) {
+            this.scale = scale;
+            this.histogram = histogram;
+            this.energy = energy;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+package hog;
+
+import utils.ByteImage;
+import utils.Filter;
+import utils.FloatImage;
+
+/*
+ * Configured-once HOG extractor. Unlike HOG it is not bound to an image or a model: it is immutable, can be shared
+ * across threads, and writes descriptors into caller-supplied buffers using per-thread scratch space, so steady-state
+ * extraction does not allocate. With the scalar gradient backend, descriptors of float images are identical to
+ * HOG.compute(); the vector backend (see GradientBackend) can move a vote across a bin edge by an ulp of the angle.
+ */
+public final class HOGDescriptor {
+    private final int nbins;
+    private final short[] pixels_per_cell;
+    private final short[] cells_per_block;
+    private final Filter filter;
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+    private volatile OrientationTable table;
+
+    public HOGDescriptor(int nbins, short[] pixels_per_cell, short[] cells_per_block) {
+        this(nbins, pixels_per_cell, cells_per_block, null);
+    }
+
+    /* Uses the given gradient operator instead of the default Sobel kernel (see HOG.setFilter) */
+    public HOGDescriptor(int nbins, short[] pixels_per_cell, short[] cells_per_block, Filter filter) {
+        this.nbins = nbins;
+        this.pixels_per_cell = pixels_per_cell.clone();
+        this.cells_per_block = cells_per_block.clone();
+        this.filter = filter;
+    }
+
+    public int getDescriptorLength(int width, int height) {
+        int n_x_blocks = width / this.pixels_per_cell[1] - this.cells_per_block[1] + 1;
+        int n_y_blocks = height / this.pixels_per_cell[0] - this.cells_per_block[0] + 1;
+        if (n_x_blocks <= 0 || n_y_blocks <= 0) return 0;
+        return n_x_blocks * n_y_blocks * this.cells_per_block[0] * this.cells_per_block[1] * this.nbins;
+    }
+
+    public float[] compute(float[][] image) {
+        return this.compute(FloatImage.fromArray(image));
+    }
+
+    public float[] compute(FloatImage image) {
+        float[] descriptor = new float[this.getDescriptorLength(image.width, image.height)];
+        this.compute(image, descriptor);
+        return descriptor;
+    }
+
+    public void compute(float[][] image, float[] descriptor) {
+        this.compute(FloatImage.fromArray(image), descriptor);
+    }
+
+    public void compute(FloatImage image, float[] descriptor) {
+        int height = image.height;
+        int width = image.width;
+
+        int length = this.getDescriptorLength(width, height);
+        if (descriptor.length < length) {
+            throw new IllegalArgumentException("Descriptor buffer too small: " + descriptor.length + " < " + length);
+        }
+
+        int n_x_cells = width / this.pixels_per_cell[1];
+        int n_y_cells = height / this.pixels_per_cell[0];
+
+        Scratch scratch = this.scratch.get();
+        float[] histogram = scratch.histogram(n_x_cells * n_y_cells * this.nbins);
+
+        HOG.accumulateHistograms(image, this.nbins, this.pixels_per_cell, n_x_cells, n_y_cells, histogram, scratch.row, this.filter);
+        this.computeBlocks(histogram, n_x_cells, n_y_cells, descriptor);
+    }
+
+    /*
+     * Integer pipeline for 8-bit grayscale pixels (row stride in bytes): uint8 input, int Sobel responses and an
+     * OrientationTable lookup instead of float gradients and transcendental calls. Agrees with compute(FloatImage) on
+     * the same pixels / 255 within the tolerance documented on OrientationTable. The table is built for Sobel
+     * responses, so with another filter the pixels go through the float pipeline instead.
+     */
+    public void compute(byte[] pixels, int width, int height, int stride, float[] descriptor) {
+        this.compute(pixels, 0, width, height, stride, descriptor);
+    }
+
+    private void compute(byte[] pixels, int offset, int width, int height, int stride, float[] descriptor) {
+        if (this.filter != null) {
+            FloatImage image = this.scratch.get().image(width, height);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    image.data[y * width + x] = (pixels[offset + y * stride + x] & 0xFF) / 255.0f;
+                }
+            }
+            this.compute(image, descriptor);
+            return;
+        }
+
+        int length = this.getDescriptorLength(width, height);
+        if (descriptor.length < length) {
+            throw new IllegalArgumentException("Descriptor buffer too small: " + descriptor.length + " < " + length);
+        }
+
+        int n_x_cells = width / this.pixels_per_cell[1];
+        int n_y_cells = height / this.pixels_per_cell[0];
+
+        float[] histogram = this.scratch.get().histogram(n_x_cells * n_y_cells * this.nbins);
+
+        HOG.accumulateHistograms(pixels, offset, width, height, stride, this.getTable(), this.pixels_per_cell, n_x_cells, n_y_cells, histogram);
+        this.computeBlocks(histogram, n_x_cells, n_y_cells, descriptor);
+    }
+
+    public float[] compute(ByteImage image) {
+        float[] descriptor = new float[this.getDescriptorLength(image.width, image.height)];
+        this.compute(image, descriptor);
+        return descriptor;
+    }
+
+    public void compute(ByteImage image, float[] descriptor) {
+        this.compute(image.data, image.offset, image.width, image.height, image.stride, descriptor);
+    }
+
+    /* Built on first use of the integer pipeline; the table itself is immutable */
+    private OrientationTable getTable() {
+        OrientationTable table = this.table;
+        if (table == null) {
+            synchronized (this) {
+                table = this.table;
+                if (table == null) {
+                    table = new OrientationTable(this.nbins);
+                    this.table = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    private void computeBlocks(float[] histogram, int n_x_cells, int n_y_cells, float[] descriptor) {
+        int n_x_blocks = n_x_cells - this.cells_per_block[1] + 1;
+        int n_y_blocks = n_y_cells - this.cells_per_block[0] + 1;
+
+        int descriptor_index = 0;
+
+        for (int y = 0; y < n_y_blocks; y++) {
+            for (int x = 0; x < n_x_blocks; x++) {
+                int block_start = descriptor_index;
+
+                for (int dy = 0; dy < this.cells_per_block[0]; dy++) {
+                    for (int dx = 0; dx < this.cells_per_block[1]; dx++) {
+                        System.arraycopy(histogram, ((y + dy) * n_x_cells + x + dx) * this.nbins, descriptor, descriptor_index, this.nbins);
+                        descriptor_index += this.nbins;
+                    }
+                }
+
+                HOG.normalizeBlock(descriptor, block_start, descriptor_index);
+            }
+        }
+    }
+
+    /* Per-thread buffers, grown on demand and reused across calls */
+    private static final class Scratch {
+        private float[] histogram = new float[0];
+        private FloatImage image;
+        private final GradientBackend.Row row = new GradientBackend.Row();
+
+        private float[] histogram(int length) {
+            if (this.histogram.length < length) this.histogram = new float[length];
+            return this.histogram;
+        }
+
+        /* Float copy of 8-bit pixels for filters the integer pipeline does not cover, resized on demand */
+        private FloatImage image(int width, int height) {
+            if (this.image == null || this.image.width != width || this.image.height != height) {
+                float[] data = this.image != null && this.image.data.length >= width * height ? this.image.data : new float[width * height];
+                this.image = new FloatImage(width, height, 1, width, data);
+            }
+            return this.image;
+        }
+    }
+}
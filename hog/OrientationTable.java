@@ -0,0 +1,104 @@
+package hog;
+
+/*
+ * Lookup table for the integer gradient path on 8-bit images. Sobel responses of uint8 pixels lie in [-1020, 1020];
+ * they are rounded to the nearest multiple of 2^SHIFT, and every (gx, gy) bucket stores the bin index and the two
+ * interpolated votes (magnitude * t, magnitude * (1 - t)) computed with the float path's formulas at that multiple.
+ * Bucket 0 is centered on 0, so flat pixels vote nothing, as in the float path. Magnitudes are in the float path's
+ * units (pixel values / 255). Responses with both components within +-FINE have exact, unrounded entries, since
+ * rounding would turn the angles of weak gradients by up to tens of degrees.
+ *
+ * Tolerance against the float path on the same 8-bit pixels (pixels / 255): beyond FINE each gradient component is
+ * off by at most 2 / 255 (half a bucket), so a pixel's total vote is off by at most 2 * sqrt(2) / 255 ~ 0.011 and
+ * its angle by at most ~2.5 degrees. Descriptor elements differ by a few 1e-3 on average, on textured and on
+ * low-contrast images alike. The exception is pixels whose exact gy is 0 with gx > 0: float rounding leaves
+ * the float path with gy = +-1e-8, and a negative residue moves the whole vote from the first to the last bin, while
+ * this table always uses the first bin. Blocks holding such pixels can differ by up to ~0.7 per element.
+ */
+public final class OrientationTable {
+    public static final int SHIFT = 2;
+    public static final int MAX_GRADIENT = 4 * 255;
+
+    private static final int HALF = 1 << (SHIFT - 1);
+    private static final int OFFSET = (MAX_GRADIENT + HALF) >> SHIFT;
+    private static final int SIZE = 2 * OFFSET + 1;
+
+    public static final int FINE = 64;
+    private static final int FINE_SIZE = 2 * FINE + 1;
+    private static final int FINE_START = SIZE * SIZE;
+
+    private final int nbins;
+    private final byte[] bins;
+    private final float[] votes_0;
+    private final float[] votes_1;
+
+    public OrientationTable(int nbins) {
+        if (nbins <= 0 || nbins > 127) {
+            throw new IllegalArgumentException("Number of bins must be in [1, 127]!");
+        }
+
+        this.nbins = nbins;
+        this.bins = new byte[FINE_START + FINE_SIZE * FINE_SIZE];
+        this.votes_0 = new float[this.bins.length];
+        this.votes_1 = new float[this.bins.length];
+
+        float[] histogram = new float[nbins];
+
+        for (int qy = -OFFSET; qy <= OFFSET; qy++) {
+            for (int qx = -OFFSET; qx <= OFFSET; qx++) {
+                this.store((qy + OFFSET) * SIZE + qx + OFFSET, center(qx), center(qy), histogram);
+            }
+        }
+
+        for (int gy = -FINE; gy <= FINE; gy++) {
+            for (int gx = -FINE; gx <= FINE; gx++) {
+                this.store(FINE_START + (gy + FINE) * FINE_SIZE + gx + FINE, gx, gy, histogram);
+            }
+        }
+    }
+
+    /* Fills entry index with the float path's bin and votes for the Sobel response (sx, sy) */
+    private void store(int index, float sx, float sy, float[] histogram) {
+        float gx = sx / 255.0f;
+        float gy = sy / 255.0f;
+
+        float magnitude = (float) Math.sqrt(gx * gx + gy * gy);
+        float degrees = (float) Math.toDegrees((float) Math.atan2(gy, gx));
+        if (degrees < 0) degrees += 360.0f;
+
+        int bin_0 = (((int) (degrees / (360.0f / this.nbins))) % this.nbins + this.nbins) % this.nbins;
+        int bin_1 = (bin_0 + 1) % this.nbins;
+        histogram[bin_0] = 0.0f;
+        histogram[bin_1] = 0.0f;
+        HOG.vote(histogram, 0, this.nbins, magnitude, degrees);
+
+        this.bins[index] = (byte) bin_0;
+        this.votes_0[index] = this.nbins == 1 ? histogram[0] : histogram[bin_0];
+        this.votes_1[index] = this.nbins == 1 ? 0.0f : histogram[bin_1];
+    }
+
+    /* Gradient value bucket q stands for, clamped to the reachable range */
+    private static float center(int q) {
+        return Math.max(-MAX_GRADIENT, Math.min(MAX_GRADIENT, q << SHIFT));
+    }
+
+    public int getNbins() {
+        return this.nbins;
+    }
+
+    /* Table index of an integer Sobel response */
+    public static int index(int gx, int gy) {
+        if (gx >= -FINE && gx <= FINE && gy >= -FINE && gy <= FINE) {
+            return FINE_START + (gy + FINE) * FINE_SIZE + gx + FINE;
+        }
+        return (((gy + HALF) >> SHIFT) + OFFSET) * SIZE + ((gx + HALF) >> SHIFT) + OFFSET;
+    }
+
+    /* Adds the votes of table entry index to the cell histogram starting at offset */
+    public void vote(float[] histogram, int offset, int index) {
+        int bin_0 = this.bins[index];
+        int bin_1 = bin_0 + 1 == this.nbins ? 0 : bin_0 + 1;
+        histogram[offset + bin_0] += this.votes_0[index];
+        histogram[offset + bin_1] += this.votes_1[index];
+    }
+}
@@ -0,0 +1,129 @@
+package hog;
+
+import utils.ByteImage;
+import utils.FloatImage;
+
+/*
+ * Plain Java backend. The arithmetic matches ImageHelper.applyFilter, getMagnitude, getAngle and HOG.vote bit for
+ * bit: zero taps and taps outside the image only ever add a signed zero, which cannot change the sums.
+ */
+public class ScalarGradientBackend implements GradientBackend {
+    @Override
+    public void computeRow(FloatImage image, int y, int length, int nbins, Row row) {
+        float degree_per_bin = 360.0f / nbins;
+        for (int x = 0; x < length; x++) {
+            computePixel(image, x, y, degree_per_bin, nbins, row);
+        }
+    }
+
+    static void computePixel(FloatImage image, int x, int y, float degree_per_bin, int nbins, Row row) {
+        int width = image.width;
+        int height = image.height;
+        int stride = image.stride;
+        float[] data = image.data;
+        int index = image.offset + y * stride + x;
+
+        float a, b, c, d, f, g, h, i;
+        if (y == 0 || y == height - 1 || x == 0 || x == width - 1) {
+            a = sample(image, x - 1, y - 1);
+            b = sample(image, x, y - 1);
+            c = sample(image, x + 1, y - 1);
+            d = sample(image, x - 1, y);
+            f = sample(image, x + 1, y);
+            g = sample(image, x - 1, y + 1);
+            h = sample(image, x, y + 1);
+            i = sample(image, x + 1, y + 1);
+        } else {
+            a = data[index - stride - 1];
+            b = data[index - stride];
+            c = data[index - stride + 1];
+            d = data[index - 1];
+            f = data[index + 1];
+            g = data[index + stride - 1];
+            h = data[index + stride];
+            i = data[index + stride + 1];
+        }
+
+        float sumX = 0.0f - a + c - 2 * d + 2 * f - g + i;
+        float sumY = 0.0f - a - 2 * b - c + g + 2 * h + i;
+
+        store(row, x, sumX, sumY, degree_per_bin, nbins);
+    }
+
+    /*
+     * Same as computeRow on the image v / 255 of 8-bit pixels v, widening each byte to float as it is read; the result
+     * is bit-identical to running the float path on ByteImage.toFloatImage()
+     */
+    static void computeRow(ByteImage image, int y, int length, int nbins, Row row) {
+        float degree_per_bin = 360.0f / nbins;
+        int width = image.width;
+        int height = image.height;
+        int stride = image.stride;
+        byte[] data = image.data;
+
+        for (int x = 0; x < length; x++) {
+            int index = image.offset + y * stride + x;
+
+            float a, b, c, d, f, g, h, i;
+            if (y == 0 || y == height - 1 || x == 0 || x == width - 1) {
+                a = sample(image, x - 1, y - 1);
+                b = sample(image, x, y - 1);
+                c = sample(image, x + 1, y - 1);
+                d = sample(image, x - 1, y);
+                f = sample(image, x + 1, y);
+                g = sample(image, x - 1, y + 1);
+                h = sample(image, x, y + 1);
+                i = sample(image, x + 1, y + 1);
+            } else {
+                a = (data[index - stride - 1] & 0xFF) / 255.0f;
+                b = (data[index - stride] & 0xFF) / 255.0f;
+                c = (data[index - stride + 1] & 0xFF) / 255.0f;
+                d = (data[index - 1] & 0xFF) / 255.0f;
+                f = (data[index + 1] & 0xFF) / 255.0f;
+                g = (data[index + stride - 1] & 0xFF) / 255.0f;
+                h = (data[index + stride] & 0xFF) / 255.0f;
+                i = (data[index + stride + 1] & 0xFF) / 255.0f;
+            }
+
+            float sumX = 0.0f - a + c - 2 * d + 2 * f - g + i;
+            float sumY = 0.0f - a - 2 * b - c + g + 2 * h + i;
+
+            store(row, x, sumX, sumY, degree_per_bin, nbins);
+        }
+    }
+
+    /* Bins the gradients a Filter left in row.gx and row.gy for pixels [0, length) */
+    static void computeRow(Row row, int length, int nbins) {
+        float degree_per_bin = 360.0f / nbins;
+        for (int x = 0; x < length; x++) {
+            store(row, x, row.gx[x], row.gy[x], degree_per_bin, nbins);
+        }
+    }
+
+    private static void store(Row row, int x, float sumX, float sumY, float degree_per_bin, int nbins) {
+        float xSq = sumX * sumX;
+        float ySq = sumY * sumY;
+        row.magnitudes[x] = (float) Math.sqrt(xSq + ySq);
+
+        float degrees = (float) Math.toDegrees((float) Math.atan2(sumY, sumX));
+        if (degrees < 0) degrees += 360.0f;
+
+        int bin_0 = (((int) (degrees / degree_per_bin)) % nbins + nbins) % nbins;
+        int bin_1 = (bin_0 + 1) % nbins;
+        float angle_0 = bin_0 * degree_per_bin;
+        float angle_1 = bin_1 * degree_per_bin;
+
+        row.bins[x] = bin_0;
+        row.weights[x] = (angle_1 - degrees) / (angle_1 - angle_0 + 1e-6f);
+    }
+
+    private static float sample(FloatImage image, int x, int y) {
+        if (x < 0 || y < 0 || x >= image.width || y >= image.height) return 0.0f;
+        return image.data[image.offset + y * image.stride + x];
+    }
+
+    private static float sample(ByteImage image, int x, int y) {
+        if (x < 0 || y < 0 || x >= image.width || y >= image.height) return 0.0f;
+        return (image.data[image.offset + y * image.stride + x] & 0xFF) / 255.0f;
+    }
+}
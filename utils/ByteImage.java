@@ -0,0 +1,75 @@
+package utils;
+
+/*
+ * 8-bit grayscale image, a quarter of the memory of a FloatImage. Pixel (x, y) lives at data[offset + y * stride + x]
+ * as an unsigned byte; value v stands for the float pixel v / 255. Kernels read the bytes directly and convert on the
+ * fly. Like FloatImage, views share a parent's buffer.
+ */
+public class ByteImage {
+    public final int width;
+    public final int height;
+    public final int stride;
+    public final int offset;
+    public final byte[] data;
+
+    public ByteImage(int width, int height) {
+        this(width, height, width, new byte[width * height]);
+    }
+
+    public ByteImage(int width, int height, int stride, byte[] data) {
+        this(width, height, stride, 0, data);
+    }
+
+    public ByteImage(int width, int height, int stride, int offset, byte[] data) {
+        if (width < 0 || height < 0 || stride < width || offset < 0
+                || (width > 0 && height > 0 && data.length < offset + (height - 1) * stride + width)) {
+            throw new IllegalArgumentException("Invalid image geometry!");
+        }
+        this.width = width;
+        this.height = height;
+        this.stride = stride;
+        this.offset = offset;
+        this.data = data;
+    }
+
+    /* Window (x, y, width, height) of this image sharing its buffer, without copying */
+    public ByteImage view(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > this.width || y + height > this.height) {
+            throw new IllegalArgumentException("View outside the image!");
+        }
+        return new ByteImage(width, height, this.stride, this.offset + y * this.stride + x, this.data);
+    }
+
+    public int get(int x, int y) {
+        return this.data[this.offset + y * this.stride + x] & 0xFF;
+    }
+
+    public void set(int x, int y, int value) {
+        this.data[this.offset + y * this.stride + x] = (byte) value;
+    }
+
+    /* First channel rounded to the nearest of the 256 levels */
+    public static ByteImage fromFloatImage(FloatImage image) {
+        ByteImage result = new ByteImage(image.width, image.height);
+        for (int y = 0; y < image.height; y++) {
+            for (int x = 0; x < image.width; x++) {
+                result.data[y * result.stride + x] = (byte) quantize(image.data[image.offset + y * image.stride + x]);
+            }
+        }
+        return result;
+    }
+
+    public static int quantize(float value) {
+        return Math.min(255, Math.max(0, Math.round(value * 255)));
+    }
+
+    public FloatImage toFloatImage() {
+        FloatImage image = new FloatImage(this.width, this.height, 1);
+        for (int y = 0; y < this.height; y++) {
+            for (int x = 0; x < this.width; x++) {
+                image.data[y * image.stride + x] = (this.data[this.offset + y * this.stride + x] & 0xFF) / 255.0f;
+            }
+        }
+        return image;
+    }
+}
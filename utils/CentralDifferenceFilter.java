@@ -0,0 +1,35 @@
+package utils;
+
+/*
+ * Centered [-1, 0, 1] derivative in both directions with no smoothing, the operator Dalal and Triggs found to work
+ * best for HOG. Two taps per response instead of Sobel's six.
+ */
+public class CentralDifferenceFilter implements Filter {
+    @Override
+    public void apply(FloatImage image, int y, int length, float[] gx, float[] gy) {
+        if (length <= 0) return;
+        if (y == 0 || y >= image.height - 1) {
+            this.applyBorder(image, y, 0, length, gx, gy);
+            return;
+        }
+
+        float[] data = image.data;
+        int row = image.offset + y * image.stride;
+        int stride = image.stride;
+        int end = Math.min(length, image.width - 1);
+
+        this.applyBorder(image, y, 0, 1, gx, gy);
+        for (int x = 1; x < end; x++) {
+            gx[x] = data[row + x + 1] - data[row + x - 1];
+            gy[x] = data[row + stride + x] - data[row - stride + x];
+        }
+        this.applyBorder(image, y, Math.max(1, end), length, gx, gy);
+    }
+
+    private void applyBorder(FloatImage image, int y, int start, int end, float[] gx, float[] gy) {
+        for (int x = start; x < end; x++) {
+            gx[x] = Filter.sample(image, x + 1, y) - Filter.sample(image, x - 1, y);
+            gy[x] = Filter.sample(image, x, y + 1) - Filter.sample(image, x, y - 1);
+        }
+    }
+}
@@ -8,35 +8,35 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 
-import hog.HOG;
+import hog.HOGDescriptor;
 
 public class DataHelper {
     public static void getTrainingData(String positive_path, String negative_path, String savePath, int[] size, int nbins, short[] pixels_per_cell, short[] cells_per_block){
         String[] positive_files = DataHelper.listFiles(positive_path);
         String[] negative_files = DataHelper.listFiles(negative_path);
 
-        int hog_feature_length = HOG.computeHOGFeatureLength(size, nbins, pixels_per_cell, cells_per_block);
         int total_positive_samples = positive_files.length;
         int total_negative_samples = negative_files.length;
         int total_samples = total_positive_samples + total_negative_samples;
+
+        // size is {height, width}, as for loadImage
+        HOGDescriptor hog = new HOGDescriptor(nbins, pixels_per_cell, cells_per_block);
+        int hog_feature_length = hog.getDescriptorLength(size[1], size[0]);
         
         float[][] data = new float[total_samples][hog_feature_length];
         int[] label = new int[total_samples];
 
-        float[][] imageArray;
-        HOG hog;
+        FloatImage imageArray;
 
         for (int i = 0; i<total_positive_samples; i++){
-            imageArray = (float[][]) ImageHelper.load(positive_path + positive_files[i], size, "grayscale");
-            hog = new HOG(imageArray, nbins, pixels_per_cell, cells_per_block, null);
-            data[i] = hog.compute();
+            imageArray = ImageHelper.loadImage(positive_path + positive_files[i], size, "grayscale");
+            hog.compute(imageArray, data[i]);
             label[i] = 1;
         }
 
         for (int i = 0; i<total_negative_samples; i++){
-            imageArray = (float[][]) ImageHelper.load(negative_path + negative_files[i], size, "grayscale");
-            hog = new HOG(imageArray, nbins, pixels_per_cell, cells_per_block, null);
-            data[total_positive_samples + i] = hog.compute();
+            imageArray = ImageHelper.loadImage(negative_path + negative_files[i], size, "grayscale");
+            hog.compute(imageArray, data[total_positive_samples + i]);
             label[total_positive_samples + i] = 0;
         }
 
@@ -49,10 +49,10 @@ public class DataHelper {
 
         int total_samples = files.length;
         
-        float[][][] images = new float[total_samples][size[0]][size[1]];
+        ByteImage[] images = new ByteImage[total_samples];
 
         for (int i = 0; i<total_samples; i++){
-            images[i] = (float[][]) ImageHelper.load(path + files[i], size, "grayscale");
+            images[i] = ImageHelper.loadGrayImage(path + files[i], size);
         }
 
         return new Object[]{files, images};
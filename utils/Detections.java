@@ -0,0 +1,106 @@
+package utils;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Growable struct-of-arrays buffer of detections: box (x, y, width, height) in scene pixels, score and pyramid level
+ * index. Only the first size() entries are valid; capacity doubles when full, so appending is amortized O(1) with
+ * no per-detection objects.
+ */
+public class Detections {
+    public int[] x;
+    public int[] y;
+    public int[] width;
+    public int[] height;
+    public float[] score;
+    public int[] level;
+    private int size;
+
+    public Detections() {
+        this(16);
+    }
+
+    public Detections(int capacity) {
+        capacity = Math.max(1, capacity);
+        this.x = new int[capacity];
+        this.y = new int[capacity];
+        this.width = new int[capacity];
+        this.height = new int[capacity];
+        this.score = new float[capacity];
+        this.level = new int[capacity];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    public void add(int x, int y, int width, int height, float score, int level) {
+        if (this.size == this.x.length) this.grow(this.size + 1);
+        this.x[this.size] = x;
+        this.y[this.size] = y;
+        this.width[this.size] = width;
+        this.height[this.size] = height;
+        this.score[this.size] = score;
+        this.level[this.size] = level;
+        this.size++;
+    }
+
+    public void add(Detections other, int i) {
+        this.add(other.x[i], other.y[i], other.width[i], other.height[i], other.score[i], other.level[i]);
+    }
+
+    public void addAll(Detections other) {
+        if (this.size + other.size > this.x.length) this.grow(this.size + other.size);
+        System.arraycopy(other.x, 0, this.x, this.size, other.size);
+        System.arraycopy(other.y, 0, this.y, this.size, other.size);
+        System.arraycopy(other.width, 0, this.width, this.size, other.size);
+        System.arraycopy(other.height, 0, this.height, this.size, other.size);
+        System.arraycopy(other.score, 0, this.score, this.size, other.size);
+        System.arraycopy(other.level, 0, this.level, this.size, other.size);
+        this.size += other.size;
+    }
+
+    /* Moves box i by (dx, dy) and then scales it by factor, e.g. from tile to scene coordinates */
+    public void transform(int i, int dx, int dy, int factor) {
+        this.x[i] = (this.x[i] + dx) * factor;
+        this.y[i] = (this.y[i] + dy) * factor;
+        this.width[i] *= factor;
+        this.height[i] *= factor;
+    }
+
+    public Rectangle getRectangle(int i) {
+        return new Rectangle(this.x[i], this.y[i], this.width[i], this.height[i]);
+    }
+
+    public List<Rectangle> toRectangles() {
+        List<Rectangle> rectangles = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) rectangles.add(this.getRectangle(i));
+        return rectangles;
+    }
+
+    public static Detections fromRectangles(List<Rectangle> rectangles, List<Float> weights) {
+        Detections detections = new Detections(rectangles.size());
+        for (int i = 0; i < rectangles.size(); i++) {
+            Rectangle rect = rectangles.get(i);
+            detections.add(rect.x, rect.y, rect.width, rect.height, weights == null ? 0.0f : weights.get(i), 0);
+        }
+        return detections;
+    }
+
+    private void grow(int minimum) {
+        int capacity = Math.max(minimum, 2 * this.x.length);
+        this.x = Arrays.copyOf(this.x, capacity);
+        this.y = Arrays.copyOf(this.y, capacity);
+        this.width = Arrays.copyOf(this.width, capacity);
+        this.height = Arrays.copyOf(this.height, capacity);
+        this.score = Arrays.copyOf(this.score, capacity);
+        this.level = Arrays.copyOf(this.level, capacity);
+    }
+}
@@ -1,5 +1,9 @@
 package utils;
 
+/*
+ * Gradient operator on the first channel of an image. Pixels outside the image count as 0, as in applyFilter.
+ * Implementations handle the interior without bounds checks and the image border in a separate pass.
+ */
 public interface Filter {
     public static final float[][] kernelX = {
         {0, 0, 0},
@@ -11,4 +15,25 @@ public interface Filter {
         {0, -1, 0},
         {0, 0, 0}
     };
+
+    /* X and Y responses of pixels [0, length) of row y, written to gx[0, length) and gy[0, length) */
+    void apply(FloatImage image, int y, int length, float[] gx, float[] gy);
+
+    /* Whole image as a two-channel image: plane 0 holds the X response, plane 1 the Y response */
+    default FloatImage apply(FloatImage image) {
+        FloatImage result = new FloatImage(image.width, image.height, 2);
+        float[] gx = new float[image.width];
+        float[] gy = new float[image.width];
+        for (int y = 0; y < image.height; y++) {
+            this.apply(image, y, image.width, gx, gy);
+            System.arraycopy(gx, 0, result.data, y * result.stride, image.width);
+            System.arraycopy(gy, 0, result.data, result.plane + y * result.stride, image.width);
+        }
+        return result;
+    }
+
+    static float sample(FloatImage image, int x, int y) {
+        if (x < 0 || y < 0 || x >= image.width || y >= image.height) return 0.0f;
+        return image.data[image.offset + y * image.stride + x];
+    }
 }
@@ -0,0 +1,111 @@
+package utils;
+
+/*
+ * Planar float image: every channel is a plane of height rows of stride floats in one float[], so pixel (x, y) of
+ * channel c lives at data[offset + c * plane + y * stride + x]. Images allocated here have offset 0 and
+ * plane = stride * height; views (see view) share a parent's buffer with their own origin and size.
+ */
+public class FloatImage {
+    public final int width;
+    public final int height;
+    public final int channels;
+    public final int stride;
+    public final int plane;
+    public final int offset;
+    public final float[] data;
+
+    public FloatImage(int width, int height, int channels) {
+        this(width, height, channels, width, new float[width * height * channels]);
+    }
+
+    public FloatImage(int width, int height, int channels, int stride, float[] data) {
+        this(width, height, channels, stride, stride * height, 0, data);
+    }
+
+    public FloatImage(int width, int height, int channels, int stride, int plane, int offset, float[] data) {
+        if (width < 0 || height < 0 || channels <= 0 || stride < width || plane < stride * height || offset < 0
+                || (width > 0 && height > 0 && data.length < offset + (channels - 1) * plane + (height - 1) * stride + width)) {
+            throw new IllegalArgumentException("Invalid image geometry!");
+        }
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.stride = stride;
+        this.plane = plane;
+        this.offset = offset;
+        this.data = data;
+    }
+
+    /* Window (x, y, width, height) of this image sharing its buffer, without copying; writes go to the parent */
+    public FloatImage view(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > this.width || y + height > this.height) {
+            throw new IllegalArgumentException("View outside the image!");
+        }
+        return new FloatImage(width, height, this.channels, this.stride, this.plane, this.offset + y * this.stride + x, this.data);
+    }
+
+    public int index(int x, int y) {
+        return this.offset + y * this.stride + x;
+    }
+
+    public float get(int x, int y) {
+        return this.data[this.offset + y * this.stride + x];
+    }
+
+    public float get(int x, int y, int c) {
+        return this.data[this.offset + c * this.plane + y * this.stride + x];
+    }
+
+    public void set(int x, int y, float value) {
+        this.data[this.offset + y * this.stride + x] = value;
+    }
+
+    public void set(int x, int y, int c, float value) {
+        this.data[this.offset + c * this.plane + y * this.stride + x] = value;
+    }
+
+    public static FloatImage fromArray(float[][] grayArray) {
+        int height = grayArray.length;
+        int width = height == 0 ? 0 : grayArray[0].length;
+        FloatImage image = new FloatImage(width, height, 1);
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(grayArray[y], 0, image.data, y * width, width);
+        }
+        return image;
+    }
+
+    public static FloatImage fromArray(float[][][] colorArray) {
+        int height = colorArray.length;
+        int width = height == 0 ? 0 : colorArray[0].length;
+        int channels = width == 0 ? 1 : colorArray[0][0].length;
+        FloatImage image = new FloatImage(width, height, channels);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int c = 0; c < channels; c++) {
+                    image.set(x, y, c, colorArray[y][x][c]);
+                }
+            }
+        }
+        return image;
+    }
+
+    public float[][] toGrayArray() {
+        float[][] grayArray = new float[this.height][this.width];
+        for (int y = 0; y < this.height; y++) {
+            System.arraycopy(this.data, this.offset + y * this.stride, grayArray[y], 0, this.width);
+        }
+        return grayArray;
+    }
+
+    public float[][][] toArray() {
+        float[][][] colorArray = new float[this.height][this.width][this.channels];
+        for (int y = 0; y < this.height; y++) {
+            for (int x = 0; x < this.width; x++) {
+                for (int c = 0; c < this.channels; c++) {
+                    colorArray[y][x][c] = this.get(x, y, c);
+                }
+            }
+        }
+        return colorArray;
+    }
+}
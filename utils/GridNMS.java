@@ -0,0 +1,191 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Greedy non-maximum suppression that sorts candidates by score once and finds overlapping boxes through a uniform
+ * grid, so each kept box is only compared against boxes in the cells it covers instead of against every candidate.
+ * The grid cell is the smallest candidate's larger side (the detection window at the finest level), widened if the
+ * grid would otherwise have far more cells than candidates.
+ *
+ * Results match RectangleHelper's original list-rebuilding loops: boxes are taken in descending score, ties in input
+ * order, and a box survives a kept box when IoU < threshold. Boxes that do not overlap have IoU 0, so they can only
+ * suppress each other through the threshold itself, which is handled without visiting them; zero-area boxes are
+ * compared directly. Scores must not be NaN. The random perturbation of RegularizedIoU is drawn from a generator
+ * seeded per call, so the same candidates always give the same selection.
+ */
+public final class GridNMS {
+    private static final int MAX_CELLS_PER_BOX = 4;
+    private static final long SEED = 0x5DEECE66DL;
+
+    private GridNMS() {}
+
+    /* Indices of the kept boxes among the first n, in the order they were selected */
+    public static int[] select(int[] x, int[] y, int[] w, int[] h, float[] score, int n, float overlapThreshold, boolean regularized) {
+        int[] order = sortByScore(score, n);
+        int[] kept = new int[n];
+        int n_kept = 0;
+
+        // Boxes are pending until kept or suppressed
+        boolean[] done = new boolean[n];
+        int[] degenerate = new int[n];
+        int n_degenerate = 0;
+        for (int k = 0; k < n; k++) {
+            int i = order[k];
+            if (w[i] <= 0 || h[i] <= 0) degenerate[n_degenerate++] = i;
+        }
+
+        Random random = regularized ? new Random(SEED) : null;
+        Grid grid = new Grid(x, y, w, h, order, n);
+        int[] stamp = new int[n];
+        Arrays.fill(stamp, -1);
+
+        boolean suffixChecked = false;
+        for (int k = 0; k < n; k++) {
+            int best = order[k];
+            if (done[best]) continue;
+            done[best] = true;
+            kept[n_kept++] = best;
+
+            if (!(overlapThreshold > 0) || w[best] <= 0 || h[best] <= 0) {
+                // Pairs that do not overlap are suppressed too (or IoU is undefined): compare against everything pending
+                for (int m = k + 1; m < n; m++) {
+                    int j = order[m];
+                    if (!done[j] && !survives(x, y, w, h, score, best, j, overlapThreshold, random)) done[j] = true;
+                }
+                continue;
+            }
+
+            if (regularized && !suffixChecked) {
+                // Weaker boxes whose score-scaled threshold has dropped to 0 go whatever their overlap. Boxes kept later
+                // score lower, so the suffix they would drop is contained in this one.
+                for (int m = n - 1; m > k; m--) {
+                    int j = order[m];
+                    if (overlapThreshold * (1.0f - (score[best] - score[j])) > 0) break;
+                    done[j] = true;
+                }
+                suffixChecked = true;
+            }
+
+            for (int d = 0; d < n_degenerate; d++) {
+                int j = degenerate[d];
+                if (!done[j] && !survives(x, y, w, h, score, best, j, overlapThreshold, random)) done[j] = true;
+            }
+
+            grid.visit(x[best], y[best], w[best], h[best], j -> {
+                if (done[j] || stamp[j] == best) return;
+                stamp[j] = best;
+                if (!survives(x, y, w, h, score, best, j, overlapThreshold, random)) done[j] = true;
+            });
+        }
+
+        return Arrays.copyOf(kept, n_kept);
+    }
+
+    /* random is null for plain IoU and the draws for RegularizedIoU otherwise */
+    private static boolean survives(int[] x, int[] y, int[] w, int[] h, float[] score, int best, int j, float overlapThreshold, Random random) {
+        if (random != null) {
+            float threshold = overlapThreshold * (1.0f - (score[best] - score[j]));
+            return RectangleHelper.RegularizedIoU(x[best], y[best], w[best], h[best], x[j], y[j], w[j], h[j], random.nextFloat()) < threshold;
+        }
+        return RectangleHelper.IoU(x[best], y[best], w[best], h[best], x[j], y[j], w[j], h[j]) < overlapThreshold;
+    }
+
+    /* Stable descending sort: score bits and input index packed into one long each */
+    private static int[] sortByScore(float[] score, int n) {
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int bits = Float.floatToIntBits(score[i] + 0.0f);
+            int sortable = bits >= 0 ? bits : bits ^ 0x7FFFFFFF;
+            keys[i] = ((long) ~sortable << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        int[] order = new int[n];
+        for (int k = 0; k < n; k++) order[k] = (int) keys[k];
+        return order;
+    }
+
+    private interface Visitor {
+        void accept(int index);
+    }
+
+    /* Buckets every box with positive area into all cells it covers, as compact start/index arrays */
+    private static final class Grid {
+        private final int originX, originY, cell, columns, rows;
+        private final int[] start;
+        private final int[] index;
+
+        private Grid(int[] x, int[] y, int[] w, int[] h, int[] order, int n) {
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+            int side = Integer.MAX_VALUE, count = 0;
+            for (int i = 0; i < n; i++) {
+                if (w[i] <= 0 || h[i] <= 0) continue;
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxX = Math.max(maxX, x[i] + w[i]);
+                maxY = Math.max(maxY, y[i] + h[i]);
+                side = Math.min(side, Math.max(w[i], h[i]));
+                count++;
+            }
+
+            if (count == 0) {
+                this.originX = this.originY = 0;
+                this.cell = this.columns = this.rows = 1;
+                this.start = new int[2];
+                this.index = new int[0];
+                return;
+            }
+
+            long spanX = (long) maxX - minX, spanY = (long) maxY - minY;
+            int cell = Math.max(1, side);
+            while ((spanX / cell + 1) * (spanY / cell + 1) > (long) MAX_CELLS_PER_BOX * count + 16) cell *= 2;
+
+            this.originX = minX;
+            this.originY = minY;
+            this.cell = cell;
+            this.columns = (int) (spanX / cell + 1);
+            this.rows = (int) (spanY / cell + 1);
+
+            this.start = new int[this.columns * this.rows + 1];
+            for (int i = 0; i < n; i++) {
+                if (w[i] <= 0 || h[i] <= 0) continue;
+                for (int r = this.row(y[i]); r <= this.row(y[i] + h[i] - 1); r++) {
+                    for (int c = this.column(x[i]); c <= this.column(x[i] + w[i] - 1); c++) this.start[r * this.columns + c + 1]++;
+                }
+            }
+            for (int c = 0; c < this.columns * this.rows; c++) this.start[c + 1] += this.start[c];
+
+            int[] fill = Arrays.copyOf(this.start, this.start.length - 1);
+            this.index = new int[this.start[this.columns * this.rows]];
+            for (int k = 0; k < n; k++) {
+                int i = order[k];
+                if (w[i] <= 0 || h[i] <= 0) continue;
+                for (int r = this.row(y[i]); r <= this.row(y[i] + h[i] - 1); r++) {
+                    for (int c = this.column(x[i]); c <= this.column(x[i] + w[i] - 1); c++) this.index[fill[r * this.columns + c]++] = i;
+                }
+            }
+        }
+
+        private int column(int x) {
+            return (int) (((long) x - this.originX) / this.cell);
+        }
+
+        private int row(int y) {
+            return (int) (((long) y - this.originY) / this.cell);
+        }
+
+        /* Calls visitor for every bucketed box sharing a cell with the given box (a box may be reported repeatedly) */
+        private void visit(int x, int y, int w, int h, Visitor visitor) {
+            int c0 = Math.max(0, this.column(x)), c1 = Math.min(this.columns - 1, this.column(x + w - 1));
+            int r0 = Math.max(0, this.row(y)), r1 = Math.min(this.rows - 1, this.row(y + h - 1));
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    int bucket = r * this.columns + c;
+                    for (int k = this.start[bucket]; k < this.start[bucket + 1]; k++) visitor.accept(this.index[k]);
+                }
+            }
+        }
+    }
+}
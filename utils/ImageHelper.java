@@ -1,19 +1,31 @@
 package utils;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
 import java.awt.Rectangle;
 
 public class ImageHelper {
     public static final float[] RED = new float[]{1.0f, 0.0f, 0.0f};
 
     public static Object load(String filePath, int[] resize, String mode) {
+        FloatImage image = loadImage(filePath, resize, mode);
+        if (image == null) return null;
+        return image.channels == 1 ? image.toGrayArray() : image.toArray();
+    }
+
+    public static FloatImage loadImage(String filePath, int[] resize, String mode) {
         try {
             BufferedImage image = ImageIO.read(new File(filePath));
             if (resize != null && resize.length == 2) {
@@ -26,9 +38,90 @@ public class ImageHelper {
             int height = image.getHeight();
 
             if ("rgb".equals(mode)) {
-                return convertToRGBArray(image, width, height);
+                return convertToRGBImage(image, width, height);
             } else if ("grayscale".equals(mode)) {
-                return convertToGrayArray(image, width, height);
+                return convertToGrayImage(image, width, height);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /*
+     * 8-bit grayscale load: the same luma as loadImage(..., "grayscale") rounded to a byte, so each pixel takes one
+     * byte instead of four and differs from the float load by at most 0.5 / 255
+     */
+    public static ByteImage loadGrayImage(String filePath, int[] resize) {
+        try {
+            BufferedImage image = ImageIO.read(new File(filePath));
+            if (resize != null && resize.length == 2) {
+                image = resizeImage(image, resize[1], resize[0]);
+            }
+
+            int width = image.getWidth();
+            int height = image.getHeight();
+            ByteImage imageArray = new ByteImage(width, height);
+            RGBReader reader = new RGBReader(image);
+            for (int y = 0; y < height; y++) {
+                int[] rgb = reader.read(y);
+                for (int x = 0; x < width; x++) {
+                    int red = (rgb[x] >> 16) & 0xFF, green = (rgb[x] >> 8) & 0xFF, blue = rgb[x] & 0xFF;
+                    imageArray.data[y * imageArray.stride + x] = (byte) ByteImage.quantize((red * 0.299f + green * 0.587f + blue * 0.114f) / 255.0f);
+                }
+            }
+            return imageArray;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /* {height, width} of the image in filePath, read from its header without decoding pixels */
+    public static int[] getImageSize(String filePath) {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(new File(filePath))) {
+            ImageReader reader = getReader(stream);
+            try {
+                return new int[] {reader.getHeight(0), reader.getWidth(0)};
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /* Decodes only the given region of the image in filePath, so tiles of a large scene can be read one at a time */
+    public static FloatImage loadImage(String filePath, Rectangle region, String mode) {
+        return loadImage(filePath, region, 1, mode);
+    }
+
+    /*
+     * Decodes the given region (null for the whole image) keeping every subsampling-th pixel in both directions,
+     * starting at its top-left corner. The reader skips the other pixels while decoding, so a coarse pyramid level
+     * or a tile costs memory for its own pixels only. Subsampling decimates without filtering.
+     */
+    public static FloatImage loadImage(String filePath, Rectangle region, int subsampling, String mode) {
+        if (subsampling <= 0) {
+            throw new IllegalArgumentException("Subsampling must be positive!");
+        }
+
+        try (ImageInputStream stream = ImageIO.createImageInputStream(new File(filePath))) {
+            ImageReader reader = getReader(stream);
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (region != null) param.setSourceRegion(region);
+                if (subsampling > 1) param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage image = reader.read(0, param);
+
+                if ("rgb".equals(mode)) {
+                    return convertToRGBImage(image, image.getWidth(), image.getHeight());
+                } else if ("grayscale".equals(mode)) {
+                    return convertToGrayImage(image, image.getWidth(), image.getHeight());
+                }
+            } finally {
+                reader.dispose();
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -36,28 +129,39 @@ public class ImageHelper {
         return null;
     }
 
-    private static float[][][] convertToRGBArray(BufferedImage image, int width, int height) {
-        float[][][] imageArray = new float[height][width][3];
+    private static ImageReader getReader(ImageInputStream stream) throws IOException {
+        if (stream == null) throw new IOException("Cannot open image stream");
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) throw new IOException("No image reader for this format");
+        ImageReader reader = readers.next();
+        reader.setInput(stream, true, true);
+        return reader;
+    }
+
+    private static FloatImage convertToRGBImage(BufferedImage image, int width, int height) {
+        FloatImage imageArray = new FloatImage(width, height, 3);
+        RGBReader reader = new RGBReader(image);
         for (int y = 0; y < height; y++) {
+            int[] rgb = reader.read(y);
+            int row = y * imageArray.stride;
             for (int x = 0; x < width; x++) {
-                int pixel = image.getRGB(x, y);
-                Color color = new Color(pixel);
-                imageArray[y][x][0] = color.getRed() / 255.0f;
-                imageArray[y][x][1] = color.getGreen() / 255.0f;
-                imageArray[y][x][2] = color.getBlue() / 255.0f;
+                imageArray.data[row + x] = ((rgb[x] >> 16) & 0xFF) / 255.0f;
+                imageArray.data[imageArray.plane + row + x] = ((rgb[x] >> 8) & 0xFF) / 255.0f;
+                imageArray.data[2 * imageArray.plane + row + x] = (rgb[x] & 0xFF) / 255.0f;
             }
         }
         return imageArray;
     }
 
-    private static float[][] convertToGrayArray(BufferedImage image, int width, int height) {
-        float[][] imageArray = new float[height][width];
+    private static FloatImage convertToGrayImage(BufferedImage image, int width, int height) {
+        FloatImage imageArray = new FloatImage(width, height, 1);
+        RGBReader reader = new RGBReader(image);
         for (int y = 0; y < height; y++) {
+            int[] rgb = reader.read(y);
+            int row = y * imageArray.stride;
             for (int x = 0; x < width; x++) {
-                int pixel = image.getRGB(x, y);
-                Color color = new Color(pixel);
-                float grayscale = (color.getRed() * 0.299f + color.getGreen() * 0.587f + color.getBlue() * 0.114f) / 255.0f;
-                imageArray[y][x] = grayscale;
+                int red = (rgb[x] >> 16) & 0xFF, green = (rgb[x] >> 8) & 0xFF, blue = rgb[x] & 0xFF;
+                imageArray.data[row + x] = (red * 0.299f + green * 0.587f + blue * 0.114f) / 255.0f;
             }
         }
         return imageArray;
@@ -90,14 +194,16 @@ public class ImageHelper {
         int width = colorArray[0].length;
         int height = colorArray.length;
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        RGBWriter writer = new RGBWriter(image);
+        int[] rgb = new int[width];
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
                 int r = Math.min(255, Math.max(0, (int) (colorArray[y][x][0] * 255)));
                 int g = Math.min(255, Math.max(0, (int) (colorArray[y][x][1] * 255)));
                 int b = Math.min(255, Math.max(0, (int) (colorArray[y][x][2] * 255)));
-                int rgb = (r << 16) | (g << 8) | b;
-                image.setRGB(x, y, rgb);
+                rgb[x] = (r << 16) | (g << 8) | b;
             }
+            writer.write(y, rgb);
         }
         return image;
     }
@@ -106,12 +212,14 @@ public class ImageHelper {
         int width = grayArray[0].length;
         int height = grayArray.length;
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        RGBWriter writer = new RGBWriter(image);
+        int[] rgb = new int[width];
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
                 int gray = Math.min(255, Math.max(0, (int) (grayArray[y][x] * 255)));
-                int rgb = gray | (gray << 8) | (gray << 16);
-                image.setRGB(x, y, rgb);
+                rgb[x] = gray | (gray << 8) | (gray << 16);
             }
+            writer.write(y, rgb);
         }
         return image;
     }
@@ -119,180 +227,219 @@ public class ImageHelper {
     public static Object crop(Object imageArray, int startX, int startY, int width, int height) {
         if (startX < 0 || startY < 0 || imageArray == null) return null;
         if (imageArray instanceof float[][][]) {
-            return cropRGBArray((float[][][]) imageArray, startX, startY, width, height);
+            FloatImage cropped = crop(FloatImage.fromArray((float[][][]) imageArray), startX, startY, width, height);
+            return cropped == null ? null : cropped.toArray();
         } else if (imageArray instanceof float[][]) {
-            return cropGrayArray((float[][]) imageArray, startX, startY, width, height);
+            FloatImage cropped = crop(FloatImage.fromArray((float[][]) imageArray), startX, startY, width, height);
+            return cropped == null ? null : cropped.toGrayArray();
         }
         return null;
     }
 
-    private static float[][][] cropRGBArray(float[][][] rgbArray, int startX, int startY, int width, int height) {
-        if (startX + width > rgbArray[0].length || startY + height > rgbArray.length) return null;
-        float[][][] croppedArray = new float[height][width][3];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                croppedArray[y][x][0] = rgbArray[startY + y][startX + x][0];
-                croppedArray[y][x][1] = rgbArray[startY + y][startX + x][1];
-                croppedArray[y][x][2] = rgbArray[startY + y][startX + x][2];
+    public static FloatImage crop(FloatImage image, int startX, int startY, int width, int height) {
+        if (startX < 0 || startY < 0 || image == null) return null;
+        if (startX + width > image.width || startY + height > image.height) return null;
+        FloatImage cropped = new FloatImage(width, height, image.channels);
+        for (int c = 0; c < image.channels; c++) {
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(image.data, image.index(startX, startY + y) + c * image.plane, cropped.data, c * cropped.plane + y * cropped.stride, width);
             }
         }
-        return croppedArray;
+        return cropped;
+    }
+
+    /* Like crop, but the result is a view of image's buffer rather than a copy (see FloatImage.view) */
+    public static FloatImage cropView(FloatImage image, int startX, int startY, int width, int height) {
+        if (startX < 0 || startY < 0 || image == null) return null;
+        if (startX + width > image.width || startY + height > image.height) return null;
+        return image.view(startX, startY, width, height);
+    }
+
+    public static ByteImage cropView(ByteImage image, int startX, int startY, int width, int height) {
+        if (startX < 0 || startY < 0 || image == null) return null;
+        if (startX + width > image.width || startY + height > image.height) return null;
+        return image.view(startX, startY, width, height);
     }
 
-    private static float[][] cropGrayArray(float[][] grayArray, int startX, int startY, int width, int height) {
-        if (startX + width > grayArray[0].length || startY + height > grayArray.length) return null;
-        float[][] croppedArray = new float[height][width];
+    public static ByteImage crop(ByteImage image, int startX, int startY, int width, int height) {
+        if (startX < 0 || startY < 0 || image == null) return null;
+        if (startX + width > image.width || startY + height > image.height) return null;
+        ByteImage cropped = new ByteImage(width, height);
         for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                croppedArray[y][x] = grayArray[startY + y][startX + x];
-            }
+            System.arraycopy(image.data, image.offset + (startY + y) * image.stride + startX, cropped.data, y * cropped.stride, width);
         }
-        return croppedArray;
+        return cropped;
     }
 
     public static Object resize(Object imageArray, int newWidth, int newHeight, String mode) {
         if (imageArray == null) return null;
         if (imageArray instanceof float[][][]) {
-            float[][][] rgbArray = (float[][][]) imageArray;
-            float[][][] resizedArray = new float[newHeight][newWidth][3];
-            float ratioX = rgbArray[0].length / (float) newWidth;
-            float ratioY = rgbArray.length / (float) newHeight;
-
-            if ("nn".equals(mode)) {
-                for (int y = 0; y < newHeight; y++) {
-                    for (int x = 0; x < newWidth; x++) {
-                        int nx = Math.min((int) (x * ratioX), rgbArray[0].length - 1);
-                        int ny = Math.min((int) (y * ratioY), rgbArray.length - 1);
-                        resizedArray[y][x][0] = rgbArray[ny][nx][0];
-                        resizedArray[y][x][1] = rgbArray[ny][nx][1];
-                        resizedArray[y][x][2] = rgbArray[ny][nx][2];
-                    }
-                }
-            } else if ("bilinear".equals(mode)) {
-                for (int y = 0; y < newHeight; y++) {
-                    for (int x = 0; x < newWidth; x++) {
-                        float origX = x * ratioX;
-                        float origY = y * ratioY;
-                        int x1 = (int) origX;
-                        int y1 = (int) origY;
-                        int x2 = Math.min(x1 + 1, rgbArray[0].length - 1);
-                        int y2 = Math.min(y1 + 1, rgbArray.length - 1);
-                        float dx = origX - x1;
-                        float dy = origY - y1;
-
-                        for (int c = 0; c < 3; c++) {
-                            float value = (1 - dx) * (1 - dy) * rgbArray[y1][x1][c]
-                                        + dx * (1 - dy) * rgbArray[y1][x2][c]
-                                        + (1 - dx) * dy * rgbArray[y2][x1][c]
-                                        + dx * dy * rgbArray[y2][x2][c];
-                            resizedArray[y][x][c] = value;
-                        }
-                    }
-                }
-            }
-            return resizedArray;
+            return resize(FloatImage.fromArray((float[][][]) imageArray), newWidth, newHeight, mode).toArray();
         } else if (imageArray instanceof float[][]) {
-            float[][] grayArray = (float[][]) imageArray;
-            float[][] resizedArray = new float[newHeight][newWidth];
-            float ratioX = grayArray[0].length / (float) newWidth;
-            float ratioY = grayArray.length / (float) newHeight;
-
-            if ("nn".equals(mode)) {
-                for (int y = 0; y < newHeight; y++) {
-                    for (int x = 0; x < newWidth; x++) {
-                        int nx = Math.min((int) (x * ratioX), grayArray[0].length - 1);
-                        int ny = Math.min((int) (y * ratioY), grayArray.length - 1);
-                        resizedArray[y][x] = grayArray[ny][nx];
-                    }
-                }
-            } else if ("bilinear".equals(mode)) {
-                for (int y = 0; y < newHeight; y++) {
-                    for (int x = 0; x < newWidth; x++) {
-                        float origX = x * ratioX;
-                        float origY = y * ratioY;
-                        int x1 = (int) origX;
-                        int y1 = (int) origY;
-                        int x2 = Math.min(x1 + 1, grayArray[0].length - 1);
-                        int y2 = Math.min(y1 + 1, grayArray.length - 1);
-                        float dx = origX - x1;
-                        float dy = origY - y1;
-
-                        float value = (1 - dx) * (1 - dy) * grayArray[y1][x1]
-                                    + dx * (1 - dy) * grayArray[y1][x2]
-                                    + (1 - dx) * dy * grayArray[y2][x1]
-                                    + dx * dy * grayArray[y2][x2];
-                        resizedArray[y][x] = value;
-                    }
-                }
-            }
-            return resizedArray;
+            return resize(FloatImage.fromArray((float[][]) imageArray), newWidth, newHeight, mode).toGrayArray();
         }
         return null;
     }
 
+    public static FloatImage resize(FloatImage image, int newWidth, int newHeight, String mode) {
+        if (image == null) return null;
+        FloatImage resized = new FloatImage(newWidth, newHeight, image.channels);
+        resize(image, resized, mode);
+        return resized;
+    }
+
+    /* Resamples image into the given buffer, at the buffer's size; mode is "nn", "bilinear" or "area" (see Resizer) */
+    public static void resize(FloatImage image, FloatImage resized, String mode) {
+        if (!isResizeMode(mode)) return;
+        Resizer.get(image.width, image.height, resized.width, resized.height, mode).resize(image, resized);
+    }
+
+    /* Same sampling as the FloatImage resize, blended in fixed point on the bytes (see Resizer) */
+    public static ByteImage resize(ByteImage image, int newWidth, int newHeight, String mode) {
+        if (image == null) return null;
+        ByteImage resized = new ByteImage(newWidth, newHeight);
+        if (isResizeMode(mode)) Resizer.get(image.width, image.height, newWidth, newHeight, mode).resize(image, resized);
+        return resized;
+    }
+
+    private static boolean isResizeMode(String mode) {
+        return "nn".equals(mode) || "bilinear".equals(mode) || "area".equals(mode);
+    }
+
     public static Object scale(Object imageArray, float k) {
         if (imageArray == null || k <= 0) return null;
         if (imageArray instanceof float[][][]) {
-            float[][][] rgbArray = (float[][][]) imageArray;
-            int newWidth = (int) (rgbArray[0].length * k);
-            int newHeight = (int) (rgbArray.length * k);
-            return resize(rgbArray, newWidth, newHeight, "bilinear");
+            return scale(FloatImage.fromArray((float[][][]) imageArray), k).toArray();
         } else if (imageArray instanceof float[][]) {
-            float[][] grayArray = (float[][]) imageArray;
-            int newWidth = (int) (grayArray[0].length * k);
-            int newHeight = (int) (grayArray.length * k);
-            return resize(grayArray, newWidth, newHeight, "bilinear");
+            return scale(FloatImage.fromArray((float[][]) imageArray), k).toGrayArray();
         }
         return null;
     }
 
+    public static FloatImage scale(FloatImage image, float k) {
+        if (image == null || k <= 0) return null;
+        int newWidth = (int) (image.width * k);
+        int newHeight = (int) (image.height * k);
+        return resize(image, newWidth, newHeight, "bilinear");
+    }
+
     public static float[][][] applyFilter(float[][] imageArray, float[][] kernelX, float[][] kernelY) {
         if (imageArray == null) return null;
-        
-        float[][][] result = new float[imageArray.length][imageArray[0].length][2];
-        for (int y = 0; y < imageArray.length; y++) {
-            for (int x = 0; x < imageArray[0].length; x++) {
+        FloatImage gradients = applyFilter(FloatImage.fromArray(imageArray), kernelX, kernelY);
+
+        float[][][] result = new float[gradients.height][gradients.width][2];
+        for (int y = 0; y < gradients.height; y++) {
+            for (int x = 0; x < gradients.width; x++) {
+                result[y][x][0] = gradients.get(x, y, 0);
+                result[y][x][1] = gradients.get(x, y, 1);
+            }
+        }
+        return result;
+    }
+
+    /* Gradients of the first channel as a two-channel image: plane 0 holds the X response, plane 1 the Y response */
+    public static FloatImage applyFilter(FloatImage image, float[][] kernelX, float[][] kernelY) {
+        if (image == null) return null;
+
+        FloatImage result = new FloatImage(image.width, image.height, 2);
+        float[] data = image.data;
+        for (int y = 0; y < image.height; y++) {
+            boolean border_row = y == 0 || y == image.height - 1;
+            for (int x = 0; x < image.width; x++) {
                 float sumX = 0, sumY = 0;
-                for (int ky = -1; ky <= 1; ky++) {
-                    for (int kx = -1; kx <= 1; kx++) {
-                        if (y + ky >= 0 && y + ky < imageArray.length && x + kx >= 0 && x + kx < imageArray[0].length) {
-                            sumX += kernelX[ky + 1][kx + 1] * imageArray[y + ky][x + kx];
-                            sumY += kernelY[ky + 1][kx + 1] * imageArray[y + ky][x + kx];
+                if (border_row || x == 0 || x == image.width - 1) {
+                    for (int ky = -1; ky <= 1; ky++) {
+                        for (int kx = -1; kx <= 1; kx++) {
+                            if (y + ky >= 0 && y + ky < image.height && x + kx >= 0 && x + kx < image.width) {
+                                float value = data[image.offset + (y + ky) * image.stride + x + kx];
+                                sumX += kernelX[ky + 1][kx + 1] * value;
+                                sumY += kernelY[ky + 1][kx + 1] * value;
+                            }
+                        }
+                    }
+                } else {
+                    for (int ky = -1; ky <= 1; ky++) {
+                        int row = image.offset + (y + ky) * image.stride + x;
+                        for (int kx = -1; kx <= 1; kx++) {
+                            float value = data[row + kx];
+                            sumX += kernelX[ky + 1][kx + 1] * value;
+                            sumY += kernelY[ky + 1][kx + 1] * value;
                         }
                     }
                 }
-                result[y][x][0] = sumX;
-                result[y][x][1] = sumY;
+                result.data[y * result.stride + x] = sumX;
+                result.data[result.plane + y * result.stride + x] = sumY;
             }
         }
         return result;
     }
 
+    public static FloatImage applyFilter(FloatImage image, Filter filter) {
+        if (image == null) return null;
+        return filter.apply(image);
+    }
+
     public static float[][] getMagnitude(float[][][] gradients) {
-        float[][] magnitude = new float[gradients.length][gradients[0].length];
-        for (int y = 0; y < gradients.length; y++) {
-            for (int x = 0; x < gradients[0].length; x++) {
-                float xSq = gradients[y][x][0] * gradients[y][x][0];
-                float ySq = gradients[y][x][1] * gradients[y][x][1];
-                magnitude[y][x] = (float) Math.sqrt(xSq + ySq);
+        return getMagnitude(FloatImage.fromArray(gradients)).toGrayArray();
+    }
+
+    public static FloatImage getMagnitude(FloatImage gradients) {
+        FloatImage magnitude = new FloatImage(gradients.width, gradients.height, 1);
+        for (int y = 0; y < gradients.height; y++) {
+            int row = gradients.offset + y * gradients.stride;
+            for (int x = 0; x < gradients.width; x++) {
+                float gx = gradients.data[row + x];
+                float gy = gradients.data[gradients.plane + row + x];
+                float xSq = gx * gx;
+                float ySq = gy * gy;
+                magnitude.data[y * magnitude.stride + x] = (float) Math.sqrt(xSq + ySq);
             }
         }
         return magnitude;
     }
 
     public static float[][] getAngle(float[][][] gradients) {
-        float[][] angle = new float[gradients.length][gradients[0].length];
-        for (int y = 0; y < gradients.length; y++) {
-            for (int x = 0; x < gradients[0].length; x++) {
-                float radians = (float) Math.atan2(gradients[y][x][1], gradients[y][x][0]);
+        return getAngle(FloatImage.fromArray(gradients)).toGrayArray();
+    }
+
+    public static FloatImage getAngle(FloatImage gradients) {
+        FloatImage angle = new FloatImage(gradients.width, gradients.height, 1);
+        for (int y = 0; y < gradients.height; y++) {
+            int row = gradients.offset + y * gradients.stride;
+            for (int x = 0; x < gradients.width; x++) {
+                float radians = (float) Math.atan2(gradients.data[gradients.plane + row + x], gradients.data[row + x]);
                 float degrees = (float) Math.toDegrees(radians);
                 if (degrees < 0) degrees += 360.0f;
-                angle[y][x] = degrees;
+                angle.data[y * angle.stride + x] = degrees;
             }
         }
         return angle;
     }
 
+    /* Summed-area table with one extra leading row and column: integral[y][x] is the sum of image[0..y)[0..x) */
+    public static double[][] getIntegralImage(float[][] imageArray) {
+        return getIntegralImage(FloatImage.fromArray(imageArray));
+    }
+
+    public static double[][] getIntegralImage(FloatImage image) {
+        int height = image.height;
+        int width = image.width;
+        double[][] integral = new double[height + 1][width + 1];
+        for (int y = 0; y < height; y++) {
+            double rowSum = 0;
+            for (int x = 0; x < width; x++) {
+                rowSum += image.data[image.offset + y * image.stride + x];
+                integral[y + 1][x + 1] = integral[y][x + 1] + rowSum;
+            }
+        }
+        return integral;
+    }
+
+    public static double sumRegion(double[][] integral, int startX, int startY, int width, int height) {
+        return integral[startY + height][startX + width] - integral[startY][startX + width]
+             - integral[startY + height][startX] + integral[startY][startX];
+    }
+
     public static float[][][] getImagePyramid(float[][] image, int numLevels, float scaleFactor) {
         float[][][] imagePyramid = new float[numLevels][][];
         for (int i = 0; i < numLevels; i++) {
@@ -331,13 +478,15 @@ public class ImageHelper {
         int width = grayArray[0].length;
         int height = grayArray.length;
         BufferedImage rgbImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        
+        RGBWriter writer = new RGBWriter(rgbImage);
+        int[] rgb = new int[width];
+
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
                 int gray = Math.min(255, Math.max(0, (int) (grayArray[y][x] * 255)));
-                int rgb = (gray << 16) | (gray << 8) | gray;
-                rgbImage.setRGB(x, y, rgb);
+                rgb[x] = (gray << 16) | (gray << 8) | gray;
             }
+            writer.write(y, rgb);
         }
         
         return rgbImage;
@@ -347,11 +496,12 @@ public class ImageHelper {
         int width = rgbImage.getWidth();
         int height = rgbImage.getHeight();
         float[][] grayArray = new float[height][width];
-        
+        RGBReader reader = new RGBReader(rgbImage);
+
         for (int y = 0; y < height; y++) {
+            int[] rgb = reader.read(y);
             for (int x = 0; x < width; x++) {
-                int rgb = rgbImage.getRGB(x, y);
-                int red = (rgb >> 16) & 0xFF;
+                int red = (rgb[x] >> 16) & 0xFF;
                 grayArray[y][x] = red / 255.0f;
             }
         }
@@ -381,6 +531,28 @@ public class ImageHelper {
         return image;
     }
 
+    public static BufferedImage drawRectangles(float[][] grayImageArray, Detections detections, float[] floatColorArray) {
+        BufferedImage image = convertToRGB(grayImageArray);
+        Graphics2D g2d = image.createGraphics();
+
+        Color color = new Color(
+            Math.min(255, Math.max(0, (int) (floatColorArray[0] * 255))),
+            Math.min(255, Math.max(0, (int) (floatColorArray[1] * 255))),
+            Math.min(255, Math.max(0, (int) (floatColorArray[2] * 255))),
+            255
+        );
+
+        g2d.setColor(color);
+        g2d.setStroke(new java.awt.BasicStroke(2));
+
+        for (int i = 0; i < detections.size(); i++) {
+            g2d.drawRect(detections.x[i], detections.y[i], detections.width[i], detections.height[i]);
+        }
+
+        g2d.dispose();
+        return image;
+    }
+
     public static void save(BufferedImage image, String path) {
         BufferedImage rgbImage = new BufferedImage(
             image.getWidth(),
@@ -405,5 +577,141 @@ public class ImageHelper {
             e.printStackTrace();
         }
     }
-}
 
+    /*
+     * Reads rows of packed sRGB pixels (as getRGB returns them) straight from the raster's DataBuffer for
+     * TYPE_INT_RGB, TYPE_3BYTE_BGR and TYPE_BYTE_GRAY, and through a bulk getRGB for every other type. Gray values go
+     * through a 256-entry table of the image's ColorModel, so results match getRGB exactly.
+     */
+    private static final class RGBReader {
+        private final BufferedImage image;
+        private final WritableRaster raster;
+        private final int width;
+        private final int[] rgb;
+        private int[] ints;
+        private byte[] bytes;
+        private int[] grayTable;
+
+        private RGBReader(BufferedImage image) {
+            this.image = image;
+            this.raster = image.getRaster();
+            this.width = image.getWidth();
+            this.rgb = new int[this.width];
+
+            switch (image.getType()) {
+                case BufferedImage.TYPE_INT_RGB:
+                    this.ints = new int[this.width];
+                    break;
+                case BufferedImage.TYPE_3BYTE_BGR:
+                    this.bytes = new byte[3 * this.width];
+                    break;
+                case BufferedImage.TYPE_BYTE_GRAY:
+                    this.bytes = new byte[this.width];
+                    this.grayTable = new int[256];
+                    ColorModel colorModel = image.getColorModel();
+                    for (int value = 0; value < 256; value++) {
+                        this.grayTable[value] = colorModel.getRGB(new byte[] {(byte) value});
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private int[] read(int y) {
+            switch (this.image.getType()) {
+                case BufferedImage.TYPE_INT_RGB:
+                    this.raster.getDataElements(0, y, this.width, 1, this.ints);
+                    for (int x = 0; x < this.width; x++) {
+                        this.rgb[x] = 0xFF000000 | this.ints[x];
+                    }
+                    break;
+                case BufferedImage.TYPE_3BYTE_BGR:
+                    // Data elements come back in band order, R, G, B
+                    this.raster.getDataElements(0, y, this.width, 1, this.bytes);
+                    for (int x = 0; x < this.width; x++) {
+                        this.rgb[x] = 0xFF000000 | (this.bytes[3 * x] & 0xFF) << 16 | (this.bytes[3 * x + 1] & 0xFF) << 8 | (this.bytes[3 * x + 2] & 0xFF);
+                    }
+                    break;
+                case BufferedImage.TYPE_BYTE_GRAY:
+                    this.raster.getDataElements(0, y, this.width, 1, this.bytes);
+                    for (int x = 0; x < this.width; x++) {
+                        this.rgb[x] = this.grayTable[this.bytes[x] & 0xFF];
+                    }
+                    break;
+                default:
+                    this.image.getRGB(0, y, this.width, 1, this.rgb, 0, this.width);
+                    break;
+            }
+            return this.rgb;
+        }
+    }
+
+    /* Writes rows of packed sRGB pixels, the counterpart of RGBReader with the same fast paths; matches setRGB exactly */
+    private static final class RGBWriter {
+        private final BufferedImage image;
+        private final WritableRaster raster;
+        private final int width;
+        private int[] ints;
+        private byte[] bytes;
+        private byte[] grayTable;
+
+        private RGBWriter(BufferedImage image) {
+            this.image = image;
+            this.raster = image.getRaster();
+            this.width = image.getWidth();
+
+            switch (image.getType()) {
+                case BufferedImage.TYPE_INT_RGB:
+                    this.ints = new int[this.width];
+                    break;
+                case BufferedImage.TYPE_3BYTE_BGR:
+                    this.bytes = new byte[3 * this.width];
+                    break;
+                case BufferedImage.TYPE_BYTE_GRAY:
+                    // Only gray pixels (r = g = b) take the table; others fall back to setRGB
+                    this.bytes = new byte[this.width];
+                    this.grayTable = new byte[256];
+                    ColorModel colorModel = image.getColorModel();
+                    for (int value = 0; value < 256; value++) {
+                        this.grayTable[value] = ((byte[]) colorModel.getDataElements(0xFF000000 | value << 16 | value << 8 | value, null))[0];
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void write(int y, int[] rgb) {
+            switch (this.image.getType()) {
+                case BufferedImage.TYPE_INT_RGB:
+                    for (int x = 0; x < this.width; x++) {
+                        this.ints[x] = rgb[x] & 0xFFFFFF;
+                    }
+                    this.raster.setDataElements(0, y, this.width, 1, this.ints);
+                    return;
+                case BufferedImage.TYPE_3BYTE_BGR:
+                    for (int x = 0; x < this.width; x++) {
+                        this.bytes[3 * x] = (byte) (rgb[x] >> 16);
+                        this.bytes[3 * x + 1] = (byte) (rgb[x] >> 8);
+                        this.bytes[3 * x + 2] = (byte) rgb[x];
+                    }
+                    this.raster.setDataElements(0, y, this.width, 1, this.bytes);
+                    return;
+                case BufferedImage.TYPE_BYTE_GRAY:
+                    for (int x = 0; x < this.width; x++) {
+                        int blue = rgb[x] & 0xFF;
+                        if (((rgb[x] >> 16) & 0xFF) != blue || ((rgb[x] >> 8) & 0xFF) != blue) {
+                            this.image.setRGB(0, y, this.width, 1, rgb, 0, this.width);
+                            return;
+                        }
+                        this.bytes[x] = this.grayTable[blue];
+                    }
+                    this.raster.setDataElements(0, y, this.width, 1, this.bytes);
+                    return;
+                default:
+                    this.image.setRGB(0, y, this.width, 1, rgb, 0, this.width);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Scale pyramid of one image at a time. Octaves are built by 2x2 box reduction, each from the previous one, and a
+ * level of any size is resampled bilinearly from the smallest octave that still covers it, i.e. one at most twice
+ * its size. A full pyramid therefore costs O(pixels) instead of one full-resolution resample per level. Octave and
+ * level buffers are kept and reused for the next image of the same size, so scanning a series of same-sized scenes
+ * does not reallocate; an image of another size drops the level buffers, so only one size's levels are held at a
+ * time. Levels may be requested concurrently; they stay valid until the next setImage.
+ */
+public class ImagePyramid {
+    private final List<Buffer> octaves = new ArrayList<>();
+    private final Map<Long, Buffer> levels = new HashMap<>();
+    private FloatImage image;
+    private int generation;
+
+    public synchronized void setImage(FloatImage image) {
+        if (this.image != null && (this.image.width != image.width || this.image.height != image.height || this.image.channels != image.channels)) {
+            this.levels.clear();
+        }
+        this.image = image;
+        this.generation++;
+    }
+
+    /* The image resampled to width x height */
+    public FloatImage getLevel(int width, int height) {
+        Buffer level;
+        FloatImage octave;
+        int generation;
+        synchronized (this) {
+            if (this.image == null) {
+                throw new IllegalStateException("No image set!");
+            }
+            octave = this.getOctave(width, height);
+            if (octave.width == width && octave.height == height) return octave;
+            level = this.levels.computeIfAbsent(((long) width << 32) | height, key -> new Buffer());
+            generation = this.generation;
+        }
+
+        synchronized (level) {
+            if (level.generation != generation) {
+                level.image = level.reuse(width, height, octave.channels);
+                if (level.resizer == null || !level.resizer.matches(octave.width, octave.height, width, height, "bilinear")) {
+                    level.resizer = new Resizer(octave.width, octave.height, width, height, "bilinear");
+                }
+                level.resizer.resize(octave, level.image);
+                level.generation = generation;
+            }
+            return level.image;
+        }
+    }
+
+    /* Smallest octave at least width x height, reducing further octaves on demand */
+    private FloatImage getOctave(int width, int height) {
+        FloatImage octave = this.image;
+        for (int k = 0; octave.width / 2 >= width && octave.height / 2 >= height; k++) {
+            if (k == this.octaves.size()) this.octaves.add(new Buffer());
+            Buffer reduced = this.octaves.get(k);
+            if (reduced.generation != this.generation) {
+                reduced.image = reduced.reuse(octave.width / 2, octave.height / 2, octave.channels);
+                reduce(octave, reduced.image);
+                reduced.generation = this.generation;
+            }
+            octave = reduced.image;
+        }
+        return octave;
+    }
+
+    /* 2x2 box reduction: each target pixel is the mean of the four source pixels it covers */
+    public static void reduce(FloatImage image, FloatImage reduced) {
+        for (int c = 0; c < image.channels; c++) {
+            for (int y = 0; y < reduced.height; y++) {
+                int top = image.offset + c * image.plane + 2 * y * image.stride;
+                int bottom = top + image.stride;
+                int target = reduced.offset + c * reduced.plane + y * reduced.stride;
+                for (int x = 0; x < reduced.width; x++) {
+                    reduced.data[target + x] = (image.data[top + 2 * x] + image.data[top + 2 * x + 1] + image.data[bottom + 2 * x] + image.data[bottom + 2 * x + 1]) * 0.25f;
+                }
+            }
+        }
+    }
+
+    private static final class Buffer {
+        private FloatImage image;
+        private Resizer resizer;
+        private int generation;
+
+        private FloatImage reuse(int width, int height, int channels) {
+            if (this.image != null && this.image.width == width && this.image.height == height && this.image.channels == channels) {
+                return this.image;
+            }
+            return new FloatImage(width, height, channels);
+        }
+    }
+}
@@ -2,41 +2,55 @@ package utils;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class RectangleHelper {
     public static float IoU(Rectangle rect1, Rectangle rect2) {
-        int x1 = Math.max(rect1.x, rect2.x);
-        int y1 = Math.max(rect1.y, rect2.y);
-        int x2 = Math.min(rect1.x + rect1.width, rect2.x + rect2.width);
-        int y2 = Math.min(rect1.y + rect1.height, rect2.y + rect2.height);
+        return IoU(rect1.x, rect1.y, rect1.width, rect1.height, rect2.x, rect2.y, rect2.width, rect2.height);
+    }
+
+    public static float IoU(int x_1, int y_1, int w_1, int h_1, int x_2, int y_2, int w_2, int h_2) {
+        int x1 = Math.max(x_1, x_2);
+        int y1 = Math.max(y_1, y_2);
+        int x2 = Math.min(x_1 + w_1, x_2 + w_2);
+        int y2 = Math.min(y_1 + h_1, y_2 + h_2);
 
         int overlapWidth = Math.max(0, x2 - x1);
         int overlapHeight = Math.max(0, y2 - y1);
 
         float overlapArea = overlapWidth * overlapHeight;
-        float unionArea = rect1.width * rect1.height + rect2.width * rect2.height - overlapArea;
+        float unionArea = w_1 * h_1 + w_2 * h_2 - overlapArea;
 
         return overlapArea / unionArea;
     }
 
     public static float RegularizedIoU(Rectangle rect1, Rectangle rect2) {
-        int rect1Area = rect1.width * rect1.height;
-        int rect2Area = rect2.width * rect2.height;
+        return RegularizedIoU(rect1.x, rect1.y, rect1.width, rect1.height, rect2.x, rect2.y, rect2.width, rect2.height);
+    }
+
+    public static float RegularizedIoU(int x_1, int y_1, int w_1, int h_1, int x_2, int y_2, int w_2, int h_2) {
+        return RegularizedIoU(x_1, y_1, w_1, h_1, x_2, y_2, w_2, h_2, (float) Math.random());
+    }
+
+    /* With the uniform draw in [0, 1) that perturbs lambda given by the caller, so that results can be reproduced */
+    public static float RegularizedIoU(int x_1, int y_1, int w_1, int h_1, int x_2, int y_2, int w_2, int h_2, float random) {
+        int rect1Area = w_1 * h_1;
+        int rect2Area = w_2 * h_2;
 
         int aL = Math.max(rect1Area, rect2Area);
         int aS = Math.min(rect1Area, rect2Area);
 
         float threshold = ((float) aS) / (aL + aS);
         
-        float lambda = threshold / 2.0f + threshold / 2.0f * ((float) Math.random() - 0.5f);
+        float lambda = threshold / 2.0f + threshold / 2.0f * (random - 0.5f);
 
-        int x1 = Math.max(rect1.x, rect2.x);
-        int y1 = Math.max(rect1.y, rect2.y);
-        int x2 = Math.min(rect1.x + rect1.width, rect2.x + rect2.width);
-        int y2 = Math.min(rect1.y + rect1.height, rect2.y + rect2.height);
+        int x1 = Math.max(x_1, x_2);
+        int y1 = Math.max(y_1, y_2);
+        int x2 = Math.min(x_1 + w_1, x_2 + w_2);
+        int y2 = Math.min(y_1 + h_1, y_2 + h_2);
 
         int overlapWidth = Math.max(0, x2 - x1);
         int overlapHeight = Math.max(0, y2 - y1);
@@ -46,71 +60,49 @@ public class RectangleHelper {
         return (overlapArea / 2.0f) / (lambda * aL + (1 - lambda) * aS - overlapArea / 2.0f);
     }
 
+    /* Greedy NMS: repeatedly keeps the highest weight and drops every box with IoU >= overlapThreshold (see GridNMS) */
     public static List<Rectangle> nonMaximumSuppression(List<Rectangle> rectangles, List<Float> weights, float overlapThreshold) {
-        List<Rectangle> finalRectangles = new ArrayList<>();
-
-        while (!rectangles.isEmpty()){
-            int maxIndex = 0;
-            for (int i = 1; i < weights.size(); i++){
-                if (weights.get(i) > weights.get(maxIndex)){
-                    maxIndex = i;
-                }
-            }
-
-            Rectangle bestRectangle = rectangles.get(maxIndex);
-            finalRectangles.add(bestRectangle);
-
-            List<Rectangle> remainingRectangles = new ArrayList<>();
-            List<Float> remainingWeights = new ArrayList<>();
-
-            for (int i = 0; i < rectangles.size(); i++) {
-                if (i == maxIndex) continue;
-
-                Rectangle rect = rectangles.get(i);
-                if (RectangleHelper.IoU(bestRectangle, rect) < overlapThreshold) {
-                    remainingRectangles.add(rect);
-                    remainingWeights.add(weights.get(i));
-                }
-            }
-
-            rectangles = remainingRectangles;
-            weights = remainingWeights;
-        }
-        return finalRectangles;
+        return suppress(rectangles, weights, overlapThreshold, false);
     }
 
+    /* Like nonMaximumSuppression with RegularizedIoU and the threshold scaled by 1 - (best weight - weight) */
     public static List<Rectangle> proposedNMS(List<Rectangle> rectangles, List<Float> weights, float overlapThreshold) {
-        List<Rectangle> finalRectangles = new ArrayList<>();
-
-        while (!rectangles.isEmpty()){
-            int maxIndex = 0;
-            for (int i = 1; i < weights.size(); i++){
-                if (weights.get(i) > weights.get(maxIndex)){
-                    maxIndex = i;
-                }
-            }
-
-            Rectangle bestRectangle = rectangles.get(maxIndex);
-            finalRectangles.add(bestRectangle);
-
-            List<Rectangle> remainingRectangles = new ArrayList<>();
-            List<Float> remainingWeights = new ArrayList<>();
+        return suppress(rectangles, weights, overlapThreshold, true);
+    }
 
-            for (int i = 0; i < rectangles.size(); i++) {
-                if (i == maxIndex) continue;
+    public static Detections nonMaximumSuppression(Detections detections, float overlapThreshold) {
+        return suppress(detections, overlapThreshold, false);
+    }
 
-                Rectangle rect = rectangles.get(i);
+    public static Detections proposedNMS(Detections detections, float overlapThreshold) {
+        return suppress(detections, overlapThreshold, true);
+    }
 
-                float threshold = overlapThreshold * (1.0f - (weights.get(maxIndex) - weights.get(i)));
+    private static Detections suppress(Detections detections, float overlapThreshold, boolean regularized) {
+        int[] keep = GridNMS.select(detections.x, detections.y, detections.width, detections.height, detections.score, detections.size(), overlapThreshold, regularized);
+        Detections finalDetections = new Detections(keep.length);
+        for (int i : keep) {
+            finalDetections.add(detections, i);
+        }
+        return finalDetections;
+    }
 
-                if (RectangleHelper.RegularizedIoU(bestRectangle, rect) < threshold) {
-                    remainingRectangles.add(rect);
-                    remainingWeights.add(weights.get(i));
-                }
-            }
+    private static List<Rectangle> suppress(List<Rectangle> rectangles, List<Float> weights, float overlapThreshold, boolean regularized) {
+        int n = rectangles.size();
+        int[] x = new int[n], y = new int[n], w = new int[n], h = new int[n];
+        float[] score = new float[n];
+        for (int i = 0; i < n; i++) {
+            Rectangle rect = rectangles.get(i);
+            x[i] = rect.x;
+            y[i] = rect.y;
+            w[i] = rect.width;
+            h[i] = rect.height;
+            score[i] = weights.get(i);
+        }
 
-            rectangles = remainingRectangles;
-            weights = remainingWeights;
+        List<Rectangle> finalRectangles = new ArrayList<>();
+        for (int i : GridNMS.select(x, y, w, h, score, n, overlapThreshold, regularized)) {
+            finalRectangles.add(rectangles.get(i));
         }
         return finalRectangles;
     }
@@ -157,15 +149,10 @@ public class RectangleHelper {
     }
 
     public static boolean intersects(Rectangle r1, Rectangle r2) {
-        int r1x = r1.x;
-        int r1y = r1.y;
-        int r1w = r1.width;
-        int r1h = r1.height;
-        int r2x = r2.x;
-        int r2y = r2.y;
-        int r2w = r2.width;
-        int r2h = r2.height;
-    
+        return intersects(r1.x, r1.y, r1.width, r1.height, r2.x, r2.y, r2.width, r2.height);
+    }
+
+    public static boolean intersects(int r1x, int r1y, int r1w, int r1h, int r2x, int r2y, int r2w, int r2h) {
         if (r1w <= 0 || r1h <= 0 || r2w <= 0 || r2h <= 0) {
             return false;
         }
@@ -217,6 +204,32 @@ public class RectangleHelper {
         return classCount;
     }
 
+    /* partition over a Detections buffer; labels[i] is the cluster of detection i, numbered by first appearance */
+    public static int partition(Detections detections, int[] labels) {
+        int n = detections.size();
+        DisjointSet ds = new DisjointSet(n);
+
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (intersects(detections.x[i], detections.y[i], detections.width[i], detections.height[i],
+                        detections.x[j], detections.y[j], detections.width[j], detections.height[j])) {
+                    ds.union(i, j);
+                }
+            }
+        }
+
+        int[] rootLabels = new int[n];
+        Arrays.fill(rootLabels, -1);
+        int classCount = 0;
+        for (int i = 0; i < n; i++) {
+            int root = ds.find(i);
+            if (rootLabels[root] < 0) rootLabels[root] = classCount++;
+            labels[i] = rootLabels[root];
+        }
+
+        return classCount;
+    }
+
     public static Rectangle computeAverageRectangle(List<Rectangle> cluster) {
         int sumX = 0, sumY = 0, sumW = 0, sumH = 0;
     
@@ -254,8 +267,46 @@ public class RectangleHelper {
 
         return result;
     }
-    
-    
+
+    /*
+     * groupRectangles over a Detections buffer, with the same clusters and averaged boxes. Each merged box keeps the
+     * best score of its cluster and the level of the detection holding it.
+     */
+    public static Detections groupRectangles(Detections detections, int groupThreshold, double eps) {
+        int n = detections.size();
+        int[] labels = new int[n];
+        int numClasses = partition(detections, labels);
+
+        int[] count = new int[numClasses];
+        int[] sumX = new int[numClasses], sumY = new int[numClasses], sumW = new int[numClasses], sumH = new int[numClasses];
+        int[] best = new int[numClasses];
+        for (int i = 0; i < n; i++) {
+            int label = labels[i];
+            if (count[label] == 0 || detections.score[i] > detections.score[best[label]]) best[label] = i;
+            count[label]++;
+            sumX[label] += detections.x[i];
+            sumY[label] += detections.y[i];
+            sumW[label] += detections.width[i];
+            sumH[label] += detections.height[i];
+        }
+
+        Detections result = new Detections(numClasses);
+        for (int label = 0; label < numClasses; label++) {
+            if (count[label] > groupThreshold) {
+                int c = count[label];
+                result.add(sumX[label] / c, sumY[label] / c, sumW[label] / c, sumH[label] / c, detections.score[best[label]], detections.level[best[label]]);
+            }
+        }
+
+        return result;
+    }
+
+    public static void print(Detections detections){
+        for (int i = 0; i < detections.size(); i++){
+            System.out.println("Rectangle: " + "<Top-Left: " + "(" + detections.x[i] + ", " + detections.y[i] + ")>, " + "<Width: " + detections.width[i] + ">, " + "<Height: " + detections.height[i] + ">");
+        }
+    }
+
     public static void print(List<Rectangle> rectangles){
         for (Rectangle rect : rectangles){
             System.out.println("Rectangle: " + "<Top-Left: " + "(" + rect.x + ", " + rect.y + ")>, " + "<Width: " + rect.width + ">, " + "<Height: " + rect.height + ">");
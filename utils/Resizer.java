@@ -0,0 +1,304 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Resize engine for one (source size, target size, mode) combination. Source columns and rows and their weights are
+ * computed once per engine instead of once per pixel, and the per-pixel work is table lookups plus the blend.
+ *
+ * "nn" and "bilinear" sample like the original ImageHelper.resize (target pixel x reads source x * ratio), and the
+ * float bilinear blend is bit-identical to it. 8-bit images blend in fixed point with FRACTION_BITS of weight, which
+ * stays within one level of the float result. "area" averages the source box each target pixel covers (weighted by
+ * coverage at fractional edges), the alias-free choice for downscaling.
+ */
+public final class Resizer {
+    public static final int FRACTION_BITS = 11;
+    private static final int ONE = 1 << FRACTION_BITS;
+    private static final int CACHE_SIZE = 128;
+
+    // Recently used engines, so repeated resizes between the same sizes (e.g. pyramid levels) build their tables once
+    private static final Map<String, Resizer> CACHE = new LinkedHashMap<String, Resizer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Resizer> eldest) {
+            return this.size() > CACHE_SIZE;
+        }
+    };
+
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int targetWidth;
+    private final int targetHeight;
+    private final String mode;
+
+    // nn and bilinear: two source indices and the weight of the second one per target column / row
+    private int[] x1, x2, y1, y2;
+    private float[] dx, dy;
+    private int[] fx, fy;
+
+    // area: source spans per target column / row, as start offsets into index and weight arrays
+    private int[] columnStart, columnIndex, rowStart, rowIndex;
+    private float[] columnWeight, rowWeight;
+
+    public Resizer(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight, String mode) {
+        if (sourceWidth < 0 || sourceHeight < 0 || targetWidth < 0 || targetHeight < 0) {
+            throw new IllegalArgumentException("Invalid resize geometry!");
+        }
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.mode = mode;
+
+        float ratioX = sourceWidth / (float) targetWidth;
+        float ratioY = sourceHeight / (float) targetHeight;
+
+        if ("nn".equals(mode)) {
+            this.x1 = new int[targetWidth];
+            this.y1 = new int[targetHeight];
+            for (int x = 0; x < targetWidth; x++) this.x1[x] = Math.min((int) (x * ratioX), sourceWidth - 1);
+            for (int y = 0; y < targetHeight; y++) this.y1[y] = Math.min((int) (y * ratioY), sourceHeight - 1);
+        } else if ("bilinear".equals(mode)) {
+            this.x1 = new int[targetWidth];
+            this.x2 = new int[targetWidth];
+            this.dx = new float[targetWidth];
+            this.fx = new int[targetWidth];
+            for (int x = 0; x < targetWidth; x++) {
+                float origX = x * ratioX;
+                this.x1[x] = (int) origX;
+                this.x2[x] = Math.min(this.x1[x] + 1, sourceWidth - 1);
+                this.dx[x] = origX - this.x1[x];
+                this.fx[x] = Math.round(this.dx[x] * ONE);
+            }
+
+            this.y1 = new int[targetHeight];
+            this.y2 = new int[targetHeight];
+            this.dy = new float[targetHeight];
+            this.fy = new int[targetHeight];
+            for (int y = 0; y < targetHeight; y++) {
+                float origY = y * ratioY;
+                this.y1[y] = (int) origY;
+                this.y2[y] = Math.min(this.y1[y] + 1, sourceHeight - 1);
+                this.dy[y] = origY - this.y1[y];
+                this.fy[y] = Math.round(this.dy[y] * ONE);
+            }
+        } else if ("area".equals(mode)) {
+            this.columnStart = new int[targetWidth + 1];
+            this.columnIndex = spanIndices(sourceWidth, targetWidth, this.columnStart);
+            this.columnWeight = spanWeights(sourceWidth, targetWidth, this.columnStart, this.columnIndex);
+            this.rowStart = new int[targetHeight + 1];
+            this.rowIndex = spanIndices(sourceHeight, targetHeight, this.rowStart);
+            this.rowWeight = spanWeights(sourceHeight, targetHeight, this.rowStart, this.rowIndex);
+        } else {
+            throw new IllegalArgumentException("Unknown resize mode: " + mode);
+        }
+    }
+
+    /* Shared engine for this geometry and mode; engines are immutable, so one may serve concurrent resizes */
+    public static Resizer get(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight, String mode) {
+        String key = sourceWidth + "x" + sourceHeight + ">" + targetWidth + "x" + targetHeight + ":" + mode;
+        synchronized (CACHE) {
+            Resizer resizer = CACHE.get(key);
+            if (resizer != null) return resizer;
+        }
+        Resizer resizer = new Resizer(sourceWidth, sourceHeight, targetWidth, targetHeight, mode);
+        synchronized (CACHE) {
+            CACHE.put(key, resizer);
+        }
+        return resizer;
+    }
+
+    public boolean matches(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight, String mode) {
+        return this.sourceWidth == sourceWidth && this.sourceHeight == sourceHeight
+            && this.targetWidth == targetWidth && this.targetHeight == targetHeight && this.mode.equals(mode);
+    }
+
+    /* Source pixels overlapped by each target pixel's span [t * ratio, (t + 1) * ratio) */
+    private static int[] spanIndices(int source, int target, int[] start) {
+        double ratio = source / (double) target;
+        for (int t = 0; t < target; t++) {
+            int first = Math.min((int) Math.floor(t * ratio), source - 1);
+            int last = Math.max(first, Math.min((int) Math.ceil((t + 1) * ratio) - 1, source - 1));
+            start[t + 1] = start[t] + last - first + 1;
+        }
+        int[] index = new int[start[target]];
+        for (int t = 0; t < target; t++) {
+            int first = Math.min((int) Math.floor(t * ratio), source - 1);
+            for (int i = start[t]; i < start[t + 1]; i++) index[i] = first + i - start[t];
+        }
+        return index;
+    }
+
+    private static float[] spanWeights(int source, int target, int[] start, int[] index) {
+        double ratio = source / (double) target;
+        float[] weight = new float[index.length];
+        for (int t = 0; t < target; t++) {
+            double low = t * ratio, high = (t + 1) * ratio, total = 0;
+            for (int i = start[t]; i < start[t + 1]; i++) {
+                total += Math.max(0, Math.min(high, index[i] + 1) - Math.max(low, index[i]));
+            }
+            for (int i = start[t]; i < start[t + 1]; i++) {
+                double overlap = Math.max(0, Math.min(high, index[i] + 1) - Math.max(low, index[i]));
+                weight[i] = (float) (total > 0 ? overlap / total : 1.0 / (start[t + 1] - start[t]));
+            }
+        }
+        return weight;
+    }
+
+    private void checkGeometry(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight) {
+        if (sourceWidth != this.sourceWidth || sourceHeight != this.sourceHeight || targetWidth != this.targetWidth || targetHeight != this.targetHeight) {
+            throw new IllegalArgumentException("Image sizes do not match this resizer!");
+        }
+    }
+
+    public void resize(FloatImage image, FloatImage resized) {
+        this.checkGeometry(image.width, image.height, resized.width, resized.height);
+        int channels = Math.min(image.channels, resized.channels);
+
+        for (int c = 0; c < channels; c++) {
+            float[] source = image.data;
+            float[] target = resized.data;
+            int sourcePlane = image.offset + c * image.plane;
+            int targetPlane = resized.offset + c * resized.plane;
+
+            if (this.dx != null) {
+                for (int y = 0; y < this.targetHeight; y++) {
+                    int row1 = sourcePlane + this.y1[y] * image.stride;
+                    int row2 = sourcePlane + this.y2[y] * image.stride;
+                    int row = targetPlane + y * resized.stride;
+                    float dy = this.dy[y];
+                    for (int x = 0; x < this.targetWidth; x++) {
+                        float dx = this.dx[x];
+                        int x1 = this.x1[x], x2 = this.x2[x];
+                        target[row + x] = (1 - dx) * (1 - dy) * source[row1 + x1]
+                                        + dx * (1 - dy) * source[row1 + x2]
+                                        + (1 - dx) * dy * source[row2 + x1]
+                                        + dx * dy * source[row2 + x2];
+                    }
+                }
+            } else if (this.x1 != null) {
+                for (int y = 0; y < this.targetHeight; y++) {
+                    int sourceRow = sourcePlane + this.y1[y] * image.stride;
+                    int row = targetPlane + y * resized.stride;
+                    for (int x = 0; x < this.targetWidth; x++) {
+                        target[row + x] = source[sourceRow + this.x1[x]];
+                    }
+                }
+            } else {
+                float[] sums = new float[this.sourceWidth];
+                for (int y = 0; y < this.targetHeight; y++) {
+                    Arrays.fill(sums, 0.0f);
+                    for (int i = this.rowStart[y]; i < this.rowStart[y + 1]; i++) {
+                        int sourceRow = sourcePlane + this.rowIndex[i] * image.stride;
+                        float weight = this.rowWeight[i];
+                        for (int x = 0; x < this.sourceWidth; x++) sums[x] += weight * source[sourceRow + x];
+                    }
+                    int row = targetPlane + y * resized.stride;
+                    for (int x = 0; x < this.targetWidth; x++) {
+                        float value = 0;
+                        for (int i = this.columnStart[x]; i < this.columnStart[x + 1]; i++) value += this.columnWeight[i] * sums[this.columnIndex[i]];
+                        target[row + x] = value;
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Resamples 8-bit pixels v into a float image of v / 255, widening each byte as it is read; bit-identical to
+     * resize(image.toFloatImage(), resized) without the float copy of the source
+     */
+    public void resize(ByteImage image, FloatImage resized) {
+        this.checkGeometry(image.width, image.height, resized.width, resized.height);
+        byte[] source = image.data;
+        float[] target = resized.data;
+
+        if (this.dx != null) {
+            for (int y = 0; y < this.targetHeight; y++) {
+                int row1 = image.offset + this.y1[y] * image.stride;
+                int row2 = image.offset + this.y2[y] * image.stride;
+                int row = resized.offset + y * resized.stride;
+                float dy = this.dy[y];
+                for (int x = 0; x < this.targetWidth; x++) {
+                    float dx = this.dx[x];
+                    int x1 = this.x1[x], x2 = this.x2[x];
+                    target[row + x] = (1 - dx) * (1 - dy) * ((source[row1 + x1] & 0xFF) / 255.0f)
+                                    + dx * (1 - dy) * ((source[row1 + x2] & 0xFF) / 255.0f)
+                                    + (1 - dx) * dy * ((source[row2 + x1] & 0xFF) / 255.0f)
+                                    + dx * dy * ((source[row2 + x2] & 0xFF) / 255.0f);
+                }
+            }
+        } else if (this.x1 != null) {
+            for (int y = 0; y < this.targetHeight; y++) {
+                int sourceRow = image.offset + this.y1[y] * image.stride;
+                int row = resized.offset + y * resized.stride;
+                for (int x = 0; x < this.targetWidth; x++) {
+                    target[row + x] = (source[sourceRow + this.x1[x]] & 0xFF) / 255.0f;
+                }
+            }
+        } else {
+            float[] sums = new float[this.sourceWidth];
+            for (int y = 0; y < this.targetHeight; y++) {
+                Arrays.fill(sums, 0.0f);
+                for (int i = this.rowStart[y]; i < this.rowStart[y + 1]; i++) {
+                    int sourceRow = image.offset + this.rowIndex[i] * image.stride;
+                    float weight = this.rowWeight[i];
+                    for (int x = 0; x < this.sourceWidth; x++) sums[x] += weight * ((source[sourceRow + x] & 0xFF) / 255.0f);
+                }
+                int row = resized.offset + y * resized.stride;
+                for (int x = 0; x < this.targetWidth; x++) {
+                    float value = 0;
+                    for (int i = this.columnStart[x]; i < this.columnStart[x + 1]; i++) value += this.columnWeight[i] * sums[this.columnIndex[i]];
+                    target[row + x] = value;
+                }
+            }
+        }
+    }
+
+    public void resize(ByteImage image, ByteImage resized) {
+        this.checkGeometry(image.width, image.height, resized.width, resized.height);
+        byte[] source = image.data;
+        byte[] target = resized.data;
+
+        if (this.fx != null) {
+            for (int y = 0; y < this.targetHeight; y++) {
+                int row1 = image.offset + this.y1[y] * image.stride;
+                int row2 = image.offset + this.y2[y] * image.stride;
+                int row = resized.offset + y * resized.stride;
+                int fy = this.fy[y];
+                for (int x = 0; x < this.targetWidth; x++) {
+                    int fx = this.fx[x];
+                    int x1 = this.x1[x], x2 = this.x2[x];
+                    int top = (source[row1 + x1] & 0xFF) * (ONE - fx) + (source[row1 + x2] & 0xFF) * fx;
+                    int bottom = (source[row2 + x1] & 0xFF) * (ONE - fx) + (source[row2 + x2] & 0xFF) * fx;
+                    target[row + x] = (byte) ((top * (ONE - fy) + bottom * fy + (1 << (2 * FRACTION_BITS - 1))) >> (2 * FRACTION_BITS));
+                }
+            }
+        } else if (this.x1 != null) {
+            for (int y = 0; y < this.targetHeight; y++) {
+                int sourceRow = image.offset + this.y1[y] * image.stride;
+                int row = resized.offset + y * resized.stride;
+                for (int x = 0; x < this.targetWidth; x++) {
+                    target[row + x] = source[sourceRow + this.x1[x]];
+                }
+            }
+        } else {
+            float[] sums = new float[this.sourceWidth];
+            for (int y = 0; y < this.targetHeight; y++) {
+                Arrays.fill(sums, 0.0f);
+                for (int i = this.rowStart[y]; i < this.rowStart[y + 1]; i++) {
+                    int sourceRow = image.offset + this.rowIndex[i] * image.stride;
+                    float weight = this.rowWeight[i];
+                    for (int x = 0; x < this.sourceWidth; x++) sums[x] += weight * (source[sourceRow + x] & 0xFF);
+                }
+                int row = resized.offset + y * resized.stride;
+                for (int x = 0; x < this.targetWidth; x++) {
+                    float value = 0;
+                    for (int i = this.columnStart[x]; i < this.columnStart[x + 1]; i++) value += this.columnWeight[i] * sums[this.columnIndex[i]];
+                    target[row + x] = (byte) Math.min(255, Math.max(0, Math.round(value)));
+                }
+            }
+        }
+    }
+}
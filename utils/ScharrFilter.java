@@ -0,0 +1,20 @@
+package utils;
+
+/* Scharr's rotation-optimized 3x3 derivative: smoothing [3, 10, 3] instead of Sobel's [1, 2, 1] */
+public class ScharrFilter extends SeparableFilter {
+    public static final float[][] kernelX = {
+        {-3, 0, 3},
+        {-10, 0, 10},
+        {-3, 0, 3}
+    };
+
+    public static final float[][] kernelY = {
+        {-3, -10, -3},
+        {0, 0, 0},
+        {3, 10, 3}
+    };
+
+    public ScharrFilter() {
+        super(3, 10);
+    }
+}
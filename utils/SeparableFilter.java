@@ -0,0 +1,67 @@
+package utils;
+
+/*
+ * 3x3 derivative kernels that factor into a [edge, center, edge] smoothing and a [-1, 0, 1] difference, e.g. Sobel
+ * (1, 2) and Scharr (3, 10). Each column of the three rows around y is smoothed and differenced once, and the
+ * horizontal pass reuses those column sums as it slides along the row.
+ */
+public abstract class SeparableFilter implements Filter {
+    private final float edge;
+    private final float center;
+
+    protected SeparableFilter(float edge, float center) {
+        this.edge = edge;
+        this.center = center;
+    }
+
+    @Override
+    public void apply(FloatImage image, int y, int length, float[] gx, float[] gy) {
+        if (length <= 0) return;
+        if (y == 0 || y >= image.height - 1) {
+            this.applyBorder(image, y, length, gx, gy);
+            return;
+        }
+
+        float[] data = image.data;
+        int stride = image.stride;
+        int row = image.offset + y * stride;
+        int last = image.width - 1;
+
+        // Column x - 1 is outside the image for x = 0, and column x + 1 for x = width - 1
+        float smooth_prev = 0.0f, diff_prev = 0.0f;
+        float smooth = this.edge * data[row - stride] + this.center * data[row] + this.edge * data[row + stride];
+        float diff = data[row + stride] - data[row - stride];
+
+        int end = Math.min(length, last);
+        for (int x = 0; x < end; x++) {
+            int next = row + x + 1;
+            float smooth_next = this.edge * data[next - stride] + this.center * data[next] + this.edge * data[next + stride];
+            float diff_next = data[next + stride] - data[next - stride];
+
+            gx[x] = smooth_next - smooth_prev;
+            gy[x] = this.edge * diff_prev + this.center * diff + this.edge * diff_next;
+
+            smooth_prev = smooth;
+            diff_prev = diff;
+            smooth = smooth_next;
+            diff = diff_next;
+        }
+
+        if (length > last) {
+            gx[last] = 0.0f - smooth_prev;
+            gy[last] = this.edge * diff_prev + this.center * diff;
+        }
+    }
+
+    /* Top and bottom rows, where one of the three rows is outside the image */
+    private void applyBorder(FloatImage image, int y, int length, float[] gx, float[] gy) {
+        for (int x = 0; x < length; x++) {
+            float a = Filter.sample(image, x - 1, y - 1), b = Filter.sample(image, x, y - 1), c = Filter.sample(image, x + 1, y - 1);
+            float d = Filter.sample(image, x - 1, y), f = Filter.sample(image, x + 1, y);
+            float g = Filter.sample(image, x - 1, y + 1), h = Filter.sample(image, x, y + 1), i = Filter.sample(image, x + 1, y + 1);
+
+            gx[x] = this.edge * (c - a) + this.center * (f - d) + this.edge * (i - g);
+            gy[x] = this.edge * (g - a) + this.center * (h - b) + this.edge * (i - c);
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package utils;
 
-public class SobelFilter implements Filter{
+public class SobelFilter extends SeparableFilter {
     public static final float[][] kernelX = {
         {-1, 0, 1},
         {-2, 0, 2},
@@ -12,4 +12,8 @@ public class SobelFilter implements Filter{
         {0, 0, 0},
         {1, 2, 1}
     };
+
+    public SobelFilter() {
+        super(1, 2);
+    }
 }
@@ -0,0 +1,81 @@
+package hog;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import utils.FloatImage;
+
+/*
+ * SIMD backend on the incubating Vector API. It lives in its own source directory, compiled separately with
+ * --add-modules jdk.incubator.vector against the main classes, so the main tree builds on any JDK. Interior pixels
+ * are processed a full vector at a time, borders and the row tail go through the scalar backend. Gradients and
+ * magnitudes are bit-identical to the scalar path; the vector atan2 and the float degree conversion may differ from
+ * Math.atan2 / Math.toDegrees by an ulp, which can only move a vote across a bin edge it sits exactly on.
+ */
+public class VectorGradientBackend implements GradientBackend {
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final float DEGREES_PER_RADIAN = (float) (180.0 / Math.PI);
+
+    @Override
+    public void computeRow(FloatImage image, int y, int length, int nbins, Row row) {
+        float degree_per_bin = 360.0f / nbins;
+
+        if (y == 0 || y >= image.height - 1 || FLOATS.length() != INTS.length()) {
+            for (int x = 0; x < length; x++) {
+                ScalarGradientBackend.computePixel(image, x, y, degree_per_bin, nbins, row);
+            }
+            return;
+        }
+
+        float[] data = image.data;
+        int stride = image.stride;
+        int center = image.offset + y * stride;
+        int above = center - stride;
+        int below = center + stride;
+        int interior_end = Math.min(length, image.width - 1);
+        int lanes = FLOATS.length();
+
+        ScalarGradientBackend.computePixel(image, 0, y, degree_per_bin, nbins, row);
+
+        int x = 1;
+        for (; x + lanes <= interior_end; x += lanes) {
+            FloatVector a = FloatVector.fromArray(FLOATS, data, above + x - 1);
+            FloatVector b = FloatVector.fromArray(FLOATS, data, above + x);
+            FloatVector c = FloatVector.fromArray(FLOATS, data, above + x + 1);
+            FloatVector d = FloatVector.fromArray(FLOATS, data, center + x - 1);
+            FloatVector f = FloatVector.fromArray(FLOATS, data, center + x + 1);
+            FloatVector g = FloatVector.fromArray(FLOATS, data, below + x - 1);
+            FloatVector h = FloatVector.fromArray(FLOATS, data, below + x);
+            FloatVector i = FloatVector.fromArray(FLOATS, data, below + x + 1);
+
+            FloatVector zero = FloatVector.zero(FLOATS);
+            FloatVector sumX = zero.sub(a).add(c).sub(d.mul(2.0f)).add(f.mul(2.0f)).sub(g).add(i);
+            FloatVector sumY = zero.sub(a).sub(b.mul(2.0f)).sub(c).add(g).add(h.mul(2.0f)).add(i);
+
+            sumX.mul(sumX).add(sumY.mul(sumY)).sqrt().intoArray(row.magnitudes, x);
+
+            FloatVector degrees = sumY.lanewise(VectorOperators.ATAN2, sumX).mul(DEGREES_PER_RADIAN);
+            degrees = degrees.add(360.0f, degrees.compare(VectorOperators.LT, 0.0f));
+
+            IntVector bin_0 = (IntVector) degrees.div(degree_per_bin).convert(VectorOperators.F2I, 0);
+            bin_0 = bin_0.sub(nbins, bin_0.compare(VectorOperators.GE, nbins));
+            IntVector bin_1 = bin_0.add(1);
+            VectorMask<Integer> wrap = bin_1.compare(VectorOperators.EQ, nbins);
+            bin_1 = bin_1.blend(0, wrap);
+
+            FloatVector angle_0 = ((FloatVector) bin_0.convert(VectorOperators.I2F, 0)).mul(degree_per_bin);
+            FloatVector angle_1 = ((FloatVector) bin_1.convert(VectorOperators.I2F, 0)).mul(degree_per_bin);
+
+            angle_1.sub(degrees).div(angle_1.sub(angle_0).add(1e-6f)).intoArray(row.weights, x);
+            bin_0.intoArray(row.bins, x);
+        }
+
+        for (; x < length; x++) {
+            ScalarGradientBackend.computePixel(image, x, y, degree_per_bin, nbins, row);
+        }
+    }
+}